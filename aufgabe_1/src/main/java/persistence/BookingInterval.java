@@ -44,6 +44,21 @@ public class BookingInterval {
         return datesFromTo(startDate, endDate).collect(Collectors.toList());
     }
 
+    public long numberOfDays(){
+        long nights = endDate.toEpochDay() - startDate.toEpochDay();
+        if (nights < 0) {
+            throw new IllegalArgumentException(endDate + " < " + this);
+        }
+        return nights;
+    }
+
+    // the end date is the day of departure, so two intervals overlap only if they share a night
+    public boolean overlaps(BookingInterval other){
+        long start = Math.max(startDate.toEpochDay(), other.startDate.toEpochDay());
+        long end = Math.min(endDate.toEpochDay(), other.endDate.toEpochDay());
+        return start < end;
+    }
+
     public LocalDate getStartDate() {
         return startDate;
     }
@@ -1,6 +1,5 @@
 package persistence;
 
-import java.time.LocalDate;
 import java.util.List;
 
 public class Room {
@@ -21,18 +20,9 @@ public class Room {
         return bookings;
     }
 
-    private boolean dateIsFree(LocalDate date) {
-        for (BookingInterval booking : bookings) {
-            if (booking.contains(date)) {
-                return false;
-            }
-        }
-        return true;
-    }
-
     public boolean roomIsFree(BookingInterval interval) {
-        for (LocalDate date : interval.dates()) {
-            if (!dateIsFree(date)) {
+        for (BookingInterval booking : bookings) {
+            if (booking.overlaps(interval)) {
                 return false;
             }
         }
@@ -57,7 +57,7 @@ public class RoomRepository {
 
     private boolean listContainsBooking(List<BookingInterval> bookingIntervals, BookingInterval booking) {
         for (BookingInterval bookingInterval : bookingIntervals) {
-            if (bookingInterval.getCustomerName() == booking.getCustomerName() && bookingInterval.getStartDate().equals(booking.getStartDate())) {
+            if (Objects.equals(bookingInterval.getCustomerName(), booking.getCustomerName()) && bookingInterval.getStartDate().equals(booking.getStartDate())) {
                 return true;
             }
         }
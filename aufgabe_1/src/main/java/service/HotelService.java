@@ -21,7 +21,7 @@ public class HotelService {
         for (Room room : rooms.getRooms().values()) {
             BookingInterval bookingInterval = new BookingInterval(startDate, endDate);
             if (room.roomIsFree(bookingInterval)) {
-                return 100.0 * bookingInterval.dates().size();
+                return 100.0 * bookingInterval.numberOfDays();
             }
         }
         return null;
@@ -56,7 +56,7 @@ public class PaymentService {
         double totalAmount =
                 bookingsForRooms.values().stream()
                         .mapToDouble(bookingsForRoom -> bookingsForRoom.stream()
-                                .mapToDouble(booking -> 100.0 * booking.dates().size())
+                                .mapToDouble(booking -> 100.0 * booking.numberOfDays())
                                 .sum())
                         .sum();
         double credit = remainingCredit(customerName);
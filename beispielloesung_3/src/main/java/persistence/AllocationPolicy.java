@@ -0,0 +1,21 @@
+package persistence;
+
+import java.util.Comparator;
+
+// order in which a guest's payments are used up when an invoice is paid
+public enum AllocationPolicy {
+
+    OLDEST_FIRST(Comparator.comparing(payment -> payment.getPaymentDate().paymentDate())),
+    // by the credit a payment has left, not by its paid amount, so a partly used payment moves back
+    LARGEST_FIRST(Comparator.comparingLong(Payment::getRemainingCreditInCents).reversed());
+
+    private final Comparator<Payment> order;
+
+    AllocationPolicy(Comparator<Payment> order) {
+        this.order = order;
+    }
+
+    Comparator<Payment> order() {
+        return order;
+    }
+}
@@ -1,18 +1,60 @@
 package persistence;
 
-public record Amount(double amount) {
-    public static final Amount ZERO = new Amount(0);
+public final class Amount {
+    private static final int CENTS_PER_UNIT = 100;
+    public static final Amount ZERO = new Amount(0L);
+
+    // fixed point: amounts are kept as whole cents so that sums do not drift
+    private final long cents;
+
+    public Amount(double amount) {
+        this.cents = Math.round(amount * CENTS_PER_UNIT);
+    }
+
+    private Amount(long cents) {
+        this.cents = cents;
+    }
+
+    public static Amount ofCents(long cents) {
+        return cents == 0 ? ZERO : new Amount(cents);
+    }
+
+    public double amount() {
+        return (double) cents / CENTS_PER_UNIT;
+    }
+
+    public long cents() {
+        return cents;
+    }
 
     public Amount add(Amount amount) {
-        return new Amount(this.amount + amount.amount);
+        return ofCents(this.cents + amount.cents);
     }
     public Amount subtract(Amount amount) {
-        return new Amount(this.amount - amount.amount);
+        return ofCents(this.cents - amount.cents);
+    }
+    public Amount times(long factor) {
+        return ofCents(this.cents * factor);
     }
     public boolean isMoreThan(Amount amount) {
-        return this.amount > amount.amount;
+        return this.cents > amount.cents;
     }
     public boolean isMoreThanOrEqual(Amount amount) {
-        return this.amount >= amount.amount;
+        return this.cents >= amount.cents;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Amount other && cents == other.cents;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(cents);
+    }
+
+    @Override
+    public String toString() {
+        return "Amount[amount=" + amount() + "]";
     }
 }
@@ -1,24 +1,53 @@
 package persistence;
 
 import java.time.LocalDate;
+import java.time.temporal.ChronoField;
 
-public record ArrivalDate(LocalDate arrivalDate) {
+// kept as a day count since 1970-01-01, so comparisons and night counts are plain arithmetic
+public record ArrivalDate(long epochDay) {
+    public ArrivalDate {
+        ChronoField.EPOCH_DAY.checkValidValue(epochDay);
+    }
+    public ArrivalDate(LocalDate arrivalDate){
+        this(arrivalDate.toEpochDay());
+    }
     public ArrivalDate(int year, int month, int day){
         this(LocalDate.of(year, month, day));
     }
+
+    public LocalDate arrivalDate() {
+        return LocalDate.ofEpochDay(epochDay);
+    }
+
     public boolean isOnOrBefore(LocalDate date) {
-        return arrivalDate.equals(date) || arrivalDate.isBefore(date);
+        return epochDay <= date.toEpochDay();
     }
 
     public ArrivalDate plusDays(int i) {
-        return new ArrivalDate(arrivalDate.plusDays(i));
+        return new ArrivalDate(epochDay + i);
     }
 
     public ArrivalDate minusDays(int i) {
-        return new ArrivalDate(arrivalDate.minusDays(i));
+        return new ArrivalDate(epochDay - i);
     }
 
     public long daysUntil(LocalDate endExclusive) {
-        return this.arrivalDate.datesUntil(endExclusive).count();
+        return daysUntil(endExclusive.toEpochDay());
+    }
+
+    public long daysUntil(DepartureDate departureDate) {
+        return daysUntil(departureDate.epochDay());
+    }
+
+    private long daysUntil(long endExclusive) {
+        if (endExclusive < epochDay) {
+            throw new IllegalArgumentException(LocalDate.ofEpochDay(endExclusive) + " < " + arrivalDate());
+        }
+        return endExclusive - epochDay;
+    }
+
+    @Override
+    public String toString() {
+        return "ArrivalDate[arrivalDate=" + arrivalDate() + "]";
     }
 }
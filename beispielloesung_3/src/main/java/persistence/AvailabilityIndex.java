@@ -0,0 +1,124 @@
+package persistence;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Inverted availability index of a RoomRepository: for each night (epoch day) the slots of all rooms
+// occupied in that night, one bit per slot. The bits live in blocks of 64 nights by 64 slots, one long
+// per night, allocated in the repository's arena. Bits are set and cleared by atomic bitwise updates,
+// so marking a night takes no lock; only creating a block does.
+final class AvailabilityIndex {
+
+    static final int SLOTS_PER_WORD = Long.SIZE;
+    private static final int NIGHTS_PER_BLOCK = 64;
+    private static final int BLOCK_BYTES = NIGHTS_PER_BLOCK * Long.BYTES;
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private final MemoryArena arena;
+    private final Object blocksLock = new Object();
+    // the blocks of each 64 nights by word of slots; a chunk's array is replaced when it grows, never modified
+    private volatile ChunkWindow chunks = new ChunkWindow(0, new AtomicReferenceArray<>(0));
+
+    AvailabilityIndex(MemoryArena arena) {
+        this.arena = arena;
+    }
+
+    private record ChunkWindow(long firstChunk, AtomicReferenceArray<ByteBuffer[]> blocks) {
+    }
+
+    // marks the slot as occupied or free in the nights from fromNight up to toNight, exclusive
+    void mark(int slot, long fromNight, long toNight, boolean occupied) {
+        int word = slot / SLOTS_PER_WORD;
+        long bit = 1L << slot;
+        long night = fromNight;
+        while (night < toNight) {
+            long chunk = Math.floorDiv(night, NIGHTS_PER_BLOCK);
+            long endOfChunk = Math.min((chunk + 1) * NIGHTS_PER_BLOCK, toNight);
+            ByteBuffer block = block(chunk, word, occupied);
+            if (block == null) {
+                night = endOfChunk;
+                continue;
+            }
+            for (; night < endOfChunk; night++) {
+                int offset = Math.floorMod(night, NIGHTS_PER_BLOCK) * Long.BYTES;
+                if (occupied) {
+                    LONGS.getAndBitwiseOr(block, offset, bit);
+                } else {
+                    LONGS.getAndBitwiseAnd(block, offset, ~bit);
+                }
+            }
+        }
+    }
+
+    // the slots of the given word occupied in any night from fromNight up to toNight, exclusive
+    long occupied(int word, long fromNight, long toNight) {
+        long occupied = 0;
+        long night = fromNight;
+        while (night < toNight) {
+            long chunk = Math.floorDiv(night, NIGHTS_PER_BLOCK);
+            long endOfChunk = Math.min((chunk + 1) * NIGHTS_PER_BLOCK, toNight);
+            ByteBuffer block = block(chunk, word, false);
+            if (block == null) {
+                night = endOfChunk;
+                continue;
+            }
+            for (; night < endOfChunk; night++) {
+                occupied |= (long) LONGS.getAcquire(block, Math.floorMod(night, NIGHTS_PER_BLOCK) * Long.BYTES);
+            }
+        }
+        return occupied;
+    }
+
+    // the block of 64 nights and 64 slots, null if it has none and is not to be created
+    private ByteBuffer block(long chunk, int word, boolean create) {
+        ChunkWindow window = chunks;
+        long index = chunk - window.firstChunk;
+        ByteBuffer[] blocks = index >= 0 && index < window.blocks.length() ? window.blocks.get((int) index) : null;
+        ByteBuffer block = blocks != null && word < blocks.length ? blocks[word] : null;
+        if (block != null || !create) {
+            return block;
+        }
+        synchronized (blocksLock) {
+            window = grownTo(chunk);
+            int chunkIndex = (int) (chunk - window.firstChunk);
+            blocks = window.blocks.get(chunkIndex);
+            if (blocks == null || word >= blocks.length || blocks[word] == null) {
+                // the array may already be visible to readers, so the block is published through a copy
+                ByteBuffer[] withBlock = blocks == null ? new ByteBuffer[word + 1] : Arrays.copyOf(blocks, Math.max(word + 1, blocks.length));
+                withBlock[word] = arena.allocate(BLOCK_BYTES);
+                window.blocks.set(chunkIndex, withBlock);
+                blocks = withBlock;
+            }
+            chunks = window;
+            return blocks[word];
+        }
+    }
+
+    // the window of chunks, grown to hold the given one; called under blocksLock
+    private ChunkWindow grownTo(long chunk) {
+        ChunkWindow window = chunks;
+        if (window.blocks.length() == 0) {
+            return new ChunkWindow(chunk, new AtomicReferenceArray<>(16));
+        }
+        if (chunk >= window.firstChunk && chunk < window.firstChunk + window.blocks.length()) {
+            return window;
+        }
+        long firstChunk = Math.min(chunk, window.firstChunk);
+        long lastChunk = Math.max(chunk, window.firstChunk + window.blocks.length() - 1);
+        long length = Math.max(lastChunk - firstChunk + 1, 2L * window.blocks.length());
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Bookings of the repository span too many nights");
+        }
+        // the window grows towards the chunk that did not fit
+        long grownFirstChunk = chunk < window.firstChunk ? lastChunk - length + 1 : firstChunk;
+        AtomicReferenceArray<ByteBuffer[]> blocks = new AtomicReferenceArray<>((int) length);
+        for (int i = 0; i < window.blocks.length(); i++) {
+            blocks.set((int) (window.firstChunk - grownFirstChunk) + i, window.blocks.get(i));
+        }
+        return new ChunkWindow(grownFirstChunk, blocks);
+    }
+}
@@ -1,23 +1,50 @@
 package persistence;
 
 import java.time.LocalDate;
+import java.util.UUID;
 
 public class Booking {
 
-    private final ArrivalDate arrivalDate;
-    private final DepartureDate departureDate;
+    static final byte CHECKED_IN = 1;
+    static final byte INVOICED = 2;
+    static final byte CHECKED_OUT = 4;
+
+    private final BookingId id;
+    private final long arrivalDay;
+    private final long departureDay;
     private final GuestName guestName;
-    private boolean invoiced = false;
-    private boolean checkedIn = false;
-    private boolean checkedOut = false;
+    // a booking keeps its own status until a RoomRepository stores it, from then on it is a view on its row
+    // in the repository's booking table; once the row holds another booking it has the status it had last
+    private byte status;
+    private volatile BookingTable table;
+    private int row;
+    private int generation;
 
     public Booking(ArrivalDate arrivalDate, DepartureDate departureDate, GuestName guestName) {
+        this(new BookingId(UUID.randomUUID().toString()), arrivalDate, departureDate, guestName);
+    }
+
+    public Booking(BookingId id, ArrivalDate arrivalDate, DepartureDate departureDate, GuestName guestName) {
+        if(id == null) { throw new IllegalArgumentException("BookingId must be provided"); }
         if(arrivalDate == null) { throw new IllegalArgumentException("ArrivalDate must be provided"); }
         if(departureDate == null) { throw new IllegalArgumentException("DepartureDate must be provided"); }
         if(guestName == null) { throw new IllegalArgumentException("GuestName must be provided"); }
-        this.arrivalDate = arrivalDate;
-        this.departureDate = departureDate;
+        this.id = id;
+        this.arrivalDay = arrivalDate.epochDay();
+        this.departureDay = departureDate.epochDay();
+        this.guestName = guestName.intern();
+    }
+
+    // a view on a row of the booking table
+    Booking(BookingTable table, int row, int generation, BookingId id, long arrivalDay, long departureDay, GuestName guestName, byte status) {
+        this.id = id;
+        this.arrivalDay = arrivalDay;
+        this.departureDay = departureDay;
         this.guestName = guestName;
+        this.status = status;
+        this.row = row;
+        this.generation = generation;
+        this.table = table;
     }
 
     public Booking(BookingRequest request){
@@ -25,45 +52,117 @@ public class Booking {
     }
 
     public boolean contains(LocalDate date) {
-            return arrivalDate.isOnOrBefore(date) && departureDate.isAfter(date);
+        long day = date.toEpochDay();
+        return arrivalDay() <= day && day < departureDay();
     }
 
     public long numberOfDays(){
-        return arrivalDate.arrivalDate().datesUntil(departureDate.departureDate()).count();
+        long arrivalDay = arrivalDay();
+        long departureDay = departureDay();
+        if (departureDay < arrivalDay) {
+            throw new IllegalArgumentException(LocalDate.ofEpochDay(departureDay) + " < " + LocalDate.ofEpochDay(arrivalDay));
+        }
+        return departureDay - arrivalDay;
+    }
+
+    public BookingId getId() {
+        return id;
     }
 
     public ArrivalDate getArrivalDate() {
-        return arrivalDate;
+        return new ArrivalDate(arrivalDay);
     }
 
     public DepartureDate getDepartureDate() {
-        return departureDate;
+        return new DepartureDate(departureDay);
     }
+
     public GuestName getGuestName() {
         return guestName;
     }
 
     public boolean isCheckedIn() {
-        return checkedIn;
+        return (status() & CHECKED_IN) != 0;
     }
 
-    public void setCheckedIn(boolean checkedIn) {
-        this.checkedIn = checkedIn;
+    // status changes go through the RoomRepository, which journals them
+    void setCheckedIn(boolean checkedIn) {
+        setStatus(CHECKED_IN, checkedIn);
     }
 
-    public void setInvoiced(boolean invoiced) {
-        this.invoiced = invoiced;
+    void setInvoiced(boolean invoiced) {
+        setStatus(INVOICED, invoiced);
     }
 
     public boolean isInvoiced() {
-        return invoiced;
+        return (status() & INVOICED) != 0;
     }
 
-    public void setCheckedOut(boolean checkedOut) {
-        this.checkedOut = checkedOut;
+    void setCheckedOut(boolean checkedOut) {
+        setStatus(CHECKED_OUT, checkedOut);
     }
 
     public boolean isCheckedOut() {
-        return this.checkedOut;
+        return (status() & CHECKED_OUT) != 0;
+    }
+
+    long arrivalDay() {
+        return arrivalDay;
+    }
+
+    long departureDay() {
+        return departureDay;
+    }
+
+    // read from the row without locking, the row's generation tells whether it still holds this booking
+    byte status() {
+        BookingTable table = this.table;
+        if (table != null) {
+            int rowStatus = table.status(row, generation);
+            if (rowStatus >= 0) {
+                if (status != rowStatus) {
+                    status = (byte) rowStatus;
+                }
+                return (byte) rowStatus;
+            }
+        }
+        return status;
+    }
+
+    private void setStatus(byte flag, boolean set) {
+        BookingTable table = this.table;
+        if (table != null && table.setStatus(row, generation, flag, set)) {
+            return;
+        }
+        status = (byte) (set ? status | flag : status & ~flag);
+    }
+
+    // the booking's row in the given table, or NONE if it is not stored there
+    int rowIn(BookingTable table) {
+        return this.table == table ? row : BookingTable.NONE;
+    }
+
+    // called by the table under the monitor of the booking's room
+    void attach(BookingTable table, int row, int generation) {
+        this.row = row;
+        this.generation = generation;
+        this.table = table;
+    }
+
+    // keeps the status the row had, called by the table before it releases the row
+    void detach(byte status) {
+        this.status = status;
+        this.table = null;
+    }
+
+    // bookings are identified by their id, a view on a stored booking equals the booking it was stored from
+    @Override
+    public boolean equals(Object o) {
+        return this == o || o instanceof Booking other && id.equals(other.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return id.hashCode();
     }
 }
@@ -0,0 +1,46 @@
+package persistence;
+
+import java.util.UUID;
+
+public record BookingId(String id) {
+
+    // ids in the canonical lower-case form of UUID.toString are stored as their two halves
+    boolean isUuid() {
+        if (id.length() != 36) {
+            return false;
+        }
+        for (int i = 0; i < 36; i++) {
+            char c = id.charAt(i);
+            boolean valid = i == 8 || i == 13 || i == 18 || i == 23 ? c == '-' : c >= '0' && c <= '9' || c >= 'a' && c <= 'f';
+            if (!valid) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // the upper half of an id in UUID form
+    long mostSignificantBits() {
+        return hexDigits(0, 18);
+    }
+
+    // the lower half of an id in UUID form
+    long leastSignificantBits() {
+        return hexDigits(19, 36);
+    }
+
+    static BookingId ofBits(long mostSignificantBits, long leastSignificantBits) {
+        return new BookingId(new UUID(mostSignificantBits, leastSignificantBits).toString());
+    }
+
+    private long hexDigits(int from, int to) {
+        long bits = 0;
+        for (int i = from; i < to; i++) {
+            char c = id.charAt(i);
+            if (c != '-') {
+                bits = bits << 4 | Character.digit(c, 16);
+            }
+        }
+        return bits;
+    }
+}
@@ -0,0 +1,147 @@
+package persistence;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// The rows of the booking table by booking id. Ids in UUID form are kept as their two halves in
+// open-addressing hash tables in the repository's arena, split into stripes with a monitor each;
+// other ids are kept in a map on the heap.
+final class BookingIdIndex {
+
+    private static final int STRIPES = 64;
+    // an entry is the two halves of the id and the row plus one, 0 marks an empty entry
+    private static final int ENTRY_BYTES = 24;
+
+    private final MemoryArena arena;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final Map<BookingId, Integer> rowsOfOtherIds = new ConcurrentHashMap<>();
+
+    BookingIdIndex(MemoryArena arena) {
+        this.arena = arena;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    private final class Stripe {
+        private ByteBuffer entries = arena.allocate(16 * ENTRY_BYTES);
+        private int capacity = 16;
+        private int size;
+    }
+
+    // the row of the id, BookingTable.NONE if it has none
+    int get(BookingId id) {
+        if (!id.isUuid()) {
+            Integer row = rowsOfOtherIds.get(id);
+            return row == null ? BookingTable.NONE : row;
+        }
+        return get(id.mostSignificantBits(), id.leastSignificantBits());
+    }
+
+    // the row of the id in UUID form with the given halves, BookingTable.NONE if it has none
+    int get(long high, long low) {
+        Stripe stripe = stripe(high, low);
+        synchronized (stripe) {
+            int entry = find(stripe, high, low);
+            return entry < 0 ? BookingTable.NONE : stripe.entries.getInt(entry * ENTRY_BYTES + 16) - 1;
+        }
+    }
+
+    // the halves of an id in UUID form are parsed once by the table, so ids in either form have a method of their own
+    void put(long high, long low, int row) {
+        Stripe stripe = stripe(high, low);
+        synchronized (stripe) {
+            int entry = find(stripe, high, low);
+            if (entry < 0) {
+                if (2 * (stripe.size + 1) > stripe.capacity) {
+                    grow(stripe);
+                }
+                entry = -find(stripe, high, low) - 1;
+                stripe.size++;
+            }
+            write(stripe.entries, entry, high, low, row + 1);
+        }
+    }
+
+    void putOther(BookingId id, int row) {
+        rowsOfOtherIds.put(id, row);
+    }
+
+    // removes the id if it still has the given row
+    void remove(long high, long low, int row) {
+        Stripe stripe = stripe(high, low);
+        synchronized (stripe) {
+            int entry = find(stripe, high, low);
+            if (entry < 0 || stripe.entries.getInt(entry * ENTRY_BYTES + 16) != row + 1) {
+                return;
+            }
+            stripe.size--;
+            // linear probing: the entries after the removed one move up unless they already sit at or after their home
+            int mask = stripe.capacity - 1;
+            int hole = entry;
+            for (int next = (hole + 1) & mask; stripe.entries.getInt(next * ENTRY_BYTES + 16) != 0; next = (next + 1) & mask) {
+                int home = home(stripe, stripe.entries.getLong(next * ENTRY_BYTES), stripe.entries.getLong(next * ENTRY_BYTES + 8));
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    stripe.entries.put(hole * ENTRY_BYTES, stripe.entries, next * ENTRY_BYTES, ENTRY_BYTES);
+                    hole = next;
+                }
+            }
+            write(stripe.entries, hole, 0, 0, 0);
+        }
+    }
+
+    void removeOther(BookingId id, int row) {
+        rowsOfOtherIds.remove(id, row);
+    }
+
+    // the entry holding the id, or minus one minus the empty entry it would go to
+    private static int find(Stripe stripe, long high, long low) {
+        int mask = stripe.capacity - 1;
+        for (int entry = home(stripe, high, low); ; entry = (entry + 1) & mask) {
+            int offset = entry * ENTRY_BYTES;
+            if (stripe.entries.getInt(offset + 16) == 0) {
+                return -entry - 1;
+            }
+            if (stripe.entries.getLong(offset) == high && stripe.entries.getLong(offset + 8) == low) {
+                return entry;
+            }
+        }
+    }
+
+    private void grow(Stripe stripe) {
+        ByteBuffer entries = stripe.entries;
+        int capacity = stripe.capacity;
+        stripe.capacity = capacity * 2;
+        stripe.entries = arena.allocate(stripe.capacity * ENTRY_BYTES);
+        for (int entry = 0; entry < capacity; entry++) {
+            int row = entries.getInt(entry * ENTRY_BYTES + 16);
+            if (row != 0) {
+                long high = entries.getLong(entry * ENTRY_BYTES);
+                long low = entries.getLong(entry * ENTRY_BYTES + 8);
+                write(stripe.entries, -find(stripe, high, low) - 1, high, low, row);
+            }
+        }
+    }
+
+    private static void write(ByteBuffer entries, int entry, long high, long low, int rowPlusOne) {
+        int offset = entry * ENTRY_BYTES;
+        entries.putLong(offset, high);
+        entries.putLong(offset + 8, low);
+        entries.putInt(offset + 16, rowPlusOne);
+    }
+
+    private Stripe stripe(long high, long low) {
+        return stripes[(int) (hash(high, low) >>> 58)];
+    }
+
+    private static int home(Stripe stripe, long high, long low) {
+        return (int) hash(high, low) & (stripe.capacity - 1);
+    }
+
+    // random UUIDs are random already, the mix spreads ids that differ only in a few bits
+    private static long hash(long high, long low) {
+        long hash = (high ^ Long.rotateLeft(low, 32)) * 0x9E3779B97F4A7C15L;
+        return hash ^ (hash >>> 29);
+    }
+}
@@ -2,6 +2,7 @@ package persistence;
 
 import service.Either;
 import service.Error;
+import service.ErrorCode;
 
 import java.time.LocalDate;
 
@@ -12,9 +13,9 @@ public class BookingRequest{
     private final GuestName guestName;
 
     public static Either<Error, BookingRequest> of(ArrivalDate arrivalDate, DepartureDate departureDate, GuestName guestName){
-        if(arrivalDate == null) { return Either.ofError(new Error("Arrival date must be provided")); }
-        if(departureDate == null) { return Either.ofError(new Error("Departure date must be provided")); }
-        if(guestName == null) { return Either.ofError(new Error("Guest name must be provided")); }
+        if(arrivalDate == null) { return Either.ofError(ErrorCode.ARRIVAL_DATE_MISSING); }
+        if(departureDate == null) { return Either.ofError(ErrorCode.DEPARTURE_DATE_MISSING); }
+        if(guestName == null) { return Either.ofError(ErrorCode.GUEST_NAME_MISSING); }
         return Either.ofResult(new BookingRequest(arrivalDate, departureDate, guestName));
     }
 
@@ -33,7 +34,7 @@ public class BookingRequest{
     }
 
     public long numberOfDays(){
-        return arrivalDate.arrivalDate().datesUntil(departureDate.departureDate()).count();
+        return arrivalDate.daysUntil(departureDate);
     }
 
     public Booking confirm() {
@@ -0,0 +1,23 @@
+package persistence;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.function.IntFunction;
+
+// where a RoomRepository keeps its booking table and the occupancy calendars of its rooms
+public enum BookingStorage {
+
+    HEAP(ByteBuffer::allocate),
+    // direct buffers live outside the Java heap, so neither heap size nor GC work grow with the number of bookings
+    OFF_HEAP(ByteBuffer::allocateDirect);
+
+    private final IntFunction<ByteBuffer> allocator;
+
+    BookingStorage(IntFunction<ByteBuffer> allocator) {
+        this.allocator = allocator;
+    }
+
+    ByteBuffer allocate(int bytes) {
+        return allocator.apply(bytes).order(ByteOrder.nativeOrder());
+    }
+}
@@ -0,0 +1,508 @@
+package persistence;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntFunction;
+
+// Columnar store of all bookings of a RoomRepository: one row per booking and one column per attribute,
+// kept in pages of PAGE_ROWS rows with each column one region of the page's buffer, allocated in the
+// repository's arena. Booking ids in UUID form are stored as their two halves, guests as ids into a
+// dictionary of guest names and rooms as their slot in the repository.
+// The rooms, guests and arrival days are doubly linked lists of rows through link columns, so the
+// indexes hold no objects per booking. A room's list is guarded by the Room's monitor, a guest's
+// and a day's list by their own, and a row is only written by the holder of its room's monitor.
+// Readers of a list see the rows linked under its monitor completely written; only the status of a
+// row changes later and is read and written atomically together with the row's generation.
+final class BookingTable {
+
+    static final int NONE = -1;
+
+    private static final int PAGE_SHIFT = 12;
+    private static final int PAGE_ROWS = 1 << PAGE_SHIFT;
+    // long columns
+    private static final int ID_HIGH = 0;
+    private static final int ID_LOW = ID_HIGH + PAGE_ROWS * Long.BYTES;
+    // int columns
+    private static final int ARRIVAL_DAY = ID_LOW + PAGE_ROWS * Long.BYTES;
+    // the generation of the row in the upper bits, its status in the lowest byte
+    private static final int STATE = ARRIVAL_DAY + PAGE_ROWS * Integer.BYTES;
+    private static final int GUEST = STATE + PAGE_ROWS * Integer.BYTES;
+    private static final int ROOM = GUEST + PAGE_ROWS * Integer.BYTES;
+    private static final int NEXT_IN_ROOM = ROOM + PAGE_ROWS * Integer.BYTES;
+    private static final int PREVIOUS_IN_ROOM = NEXT_IN_ROOM + PAGE_ROWS * Integer.BYTES;
+    private static final int NEXT_OF_GUEST = PREVIOUS_IN_ROOM + PAGE_ROWS * Integer.BYTES;
+    private static final int PREVIOUS_OF_GUEST = NEXT_OF_GUEST + PAGE_ROWS * Integer.BYTES;
+    private static final int NEXT_ON_DAY = PREVIOUS_OF_GUEST + PAGE_ROWS * Integer.BYTES;
+    private static final int PREVIOUS_ON_DAY = NEXT_ON_DAY + PAGE_ROWS * Integer.BYTES;
+    // short column
+    private static final int NIGHTS = PREVIOUS_ON_DAY + PAGE_ROWS * Integer.BYTES;
+    private static final int PAGE_BYTES = NIGHTS + PAGE_ROWS * Short.BYTES;
+
+    // a free row keeps its generation, the next booking of the row gets the following one
+    private static final int FREE = 0x80;
+    // the id is not in UUID form and kept in otherIds
+    private static final int OTHER_ID = 0x40;
+    private static final int STATUS = 0x3F;
+    private static final int GENERATIONS = 0xFFFFFF;
+    private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    private final MemoryArena arena;
+    private final Object pagesLock = new Object();
+    private volatile ByteBuffer[] pages = new ByteBuffer[4];
+    private final AtomicInteger rowCount = new AtomicInteger();
+    private final BookingIdIndex rowsById;
+    private final Map<Integer, BookingId> otherIds = new ConcurrentHashMap<>();
+
+    private final Map<GuestName, GuestRows> guests = new ConcurrentHashMap<>();
+    private final Object guestsLock = new Object();
+    private volatile GuestRows[] guestsById = new GuestRows[64];
+    private int guestCount;
+
+    private final Object daysLock = new Object();
+    private volatile DayWindow days = new DayWindow(0, new AtomicReferenceArray<>(0));
+
+    BookingTable(MemoryArena arena) {
+        this.arena = arena;
+        this.rowsById = new BookingIdIndex(arena);
+    }
+
+    // the ends of a list of rows, guarded by the monitor of its owner
+    static class Rows {
+        int first = NONE;
+        int last = NONE;
+        int size;
+    }
+
+    // the rows of a room and the rows it freed, which its next bookings reuse
+    static final class RoomRows extends Rows {
+        private final int slot;
+        private int free = NONE;
+
+        private RoomRows(int slot) {
+            this.slot = slot;
+        }
+    }
+
+    private static final class GuestRows extends Rows {
+        private final int id;
+        private final GuestName guestName;
+
+        private GuestRows(int id, GuestName guestName) {
+            this.id = id;
+            this.guestName = guestName;
+        }
+    }
+
+    private record DayWindow(long firstDay, AtomicReferenceArray<Rows> rows) {
+    }
+
+    // a new room in the given slot, taking over the free rows of the room it replaces if there is one
+    RoomRows roomRows(int slot, RoomRows replaced) {
+        RoomRows rows = new RoomRows(slot);
+        if (replaced != null) {
+            rows.free = replaced.free;
+            replaced.free = NONE;
+        }
+        return rows;
+    }
+
+    // called under the room's monitor
+    void add(RoomRows room, Booking booking) {
+        long arrivalDay = booking.arrivalDay();
+        long nights = booking.departureDay() - arrivalDay;
+        if (arrivalDay != (int) arrivalDay || nights != (short) nights) {
+            throw new IllegalArgumentException("Booking " + booking.getId().id() + " is out of the range of the booking table");
+        }
+        GuestRows guest = guest(booking.getGuestName());
+        int row = newRow(room);
+        ByteBuffer page = page(row);
+        int index = row & (PAGE_ROWS - 1);
+        page.putInt(column(ARRIVAL_DAY, index), (int) arrivalDay);
+        page.putShort(NIGHTS + index * Short.BYTES, (short) nights);
+        page.putInt(column(GUEST, index), guest.id);
+        page.putInt(column(ROOM, index), room.slot);
+        BookingId id = booking.getId();
+        int idFlag = 0;
+        long high = 0;
+        long low = 0;
+        if (id.isUuid()) {
+            high = id.mostSignificantBits();
+            low = id.leastSignificantBits();
+            page.putLong(ID_HIGH + index * Long.BYTES, high);
+            page.putLong(ID_LOW + index * Long.BYTES, low);
+        } else {
+            otherIds.put(row, id);
+            idFlag = OTHER_ID;
+        }
+        int generation = ((state(row) >>> 8) + 1) & GENERATIONS;
+        INTS.setRelease(page, column(STATE, index), generation << 8 | idFlag | booking.status() & STATUS);
+        append(room, row, NEXT_IN_ROOM, PREVIOUS_IN_ROOM);
+        synchronized (guest) {
+            append(guest, row, NEXT_OF_GUEST, PREVIOUS_OF_GUEST);
+        }
+        Rows day = day(arrivalDay, true);
+        synchronized (day) {
+            append(day, row, NEXT_ON_DAY, PREVIOUS_ON_DAY);
+        }
+        if (idFlag == 0) {
+            rowsById.put(high, low, row);
+        } else {
+            rowsById.putOther(id, row);
+        }
+        booking.attach(this, row, generation);
+    }
+
+    // Removes the booking from the room, called under the room's monitor. The booking keeps its values,
+    // the row is only reused once it left every list.
+    boolean remove(RoomRows room, Booking booking) {
+        int row = rowIn(room, booking);
+        if (row == NONE) {
+            return false;
+        }
+        booking.detach((byte) (state(row) & STATUS));
+        if ((state(row) & OTHER_ID) == 0) {
+            int index = row & (PAGE_ROWS - 1);
+            rowsById.remove(page(row).getLong(ID_HIGH + index * Long.BYTES), page(row).getLong(ID_LOW + index * Long.BYTES), row);
+        } else {
+            rowsById.removeOther(booking.getId(), row);
+        }
+        unlink(room, row, NEXT_IN_ROOM, PREVIOUS_IN_ROOM);
+        GuestRows guest = guestsById[intAt(row, GUEST)];
+        synchronized (guest) {
+            unlink(guest, row, NEXT_OF_GUEST, PREVIOUS_OF_GUEST);
+        }
+        Rows day = day(intAt(row, ARRIVAL_DAY), false);
+        synchronized (day) {
+            unlink(day, row, NEXT_ON_DAY, PREVIOUS_ON_DAY);
+        }
+        if ((state(row) & OTHER_ID) != 0) {
+            otherIds.remove(row);
+        }
+        INTS.setRelease(page(row), column(STATE, row & (PAGE_ROWS - 1)), (state(row) & ~0xFF) | FREE);
+        setIntAt(row, NEXT_IN_ROOM, room.free);
+        room.free = row;
+        return true;
+    }
+
+    // removes all bookings of a room that is replaced, they keep their values; called under the room's monitor
+    List<Booking> removeAll(RoomRows room) {
+        List<Booking> bookings = bookings(room);
+        for (Booking booking : bookings) {
+            remove(room, booking);
+        }
+        return bookings;
+    }
+
+    // the row of a booking the room holds, by the row the booking was stored in or by its id; called under the room's monitor
+    int rowIn(RoomRows room, Booking booking) {
+        int row = booking.rowIn(this);
+        if (row == NONE) {
+            row = rowsById.get(booking.getId());
+        }
+        return row != NONE && holds(room, row, booking.getId()) ? row : NONE;
+    }
+
+    // whether the room holds the booking with the given id in the row; called under the room's monitor
+    boolean holds(RoomRows room, int row, BookingId id) {
+        return isLive(row) && intAt(row, ROOM) == room.slot && hasId(row, id);
+    }
+
+    // views on the bookings of a room in the order they were added; called under the room's monitor
+    List<Booking> bookings(RoomRows room) {
+        List<Booking> bookings = new ArrayList<>(room.size);
+        for (int row = room.first; row != NONE; row = intAt(row, NEXT_IN_ROOM)) {
+            bookings.add(view(row, guestsById[intAt(row, GUEST)].guestName));
+        }
+        return bookings;
+    }
+
+    interface StayConsumer {
+        void accept(long arrivalDay, long departureDay);
+    }
+
+    // the stays of a room, read from the day columns; called under the room's monitor
+    void forEachStay(RoomRows room, StayConsumer consumer) {
+        for (int row = room.first; row != NONE; row = intAt(row, NEXT_IN_ROOM)) {
+            long arrivalDay = intAt(row, ARRIVAL_DAY);
+            consumer.accept(arrivalDay, arrivalDay + nightsAt(row));
+        }
+    }
+
+    // the row a booking id is stored in, NONE if there is none; the row is only stable under its room's monitor
+    int rowOf(BookingId id) {
+        return rowsById.get(id);
+    }
+
+    // the slot of the room holding a row, only stable under that room's monitor
+    int slotOf(int row) {
+        return intAt(row, ROOM);
+    }
+
+    // a view on the booking in a row, called under the monitor of the row's room
+    Booking view(int row) {
+        return view(row, guestsById[intAt(row, GUEST)].guestName);
+    }
+
+    boolean hasBookings(GuestName guestName) {
+        GuestRows guest = guests.get(guestName);
+        if (guest == null) {
+            return false;
+        }
+        synchronized (guest) {
+            return guest.size > 0;
+        }
+    }
+
+    // the bookings of a guest in the order they were made, with the numbers of their rooms
+    List<RoomBooking> roomBookingsOf(GuestName guestName, IntFunction<RoomNumber> roomNumbers) {
+        GuestRows guest = guests.get(guestName);
+        if (guest == null) {
+            return List.of();
+        }
+        synchronized (guest) {
+            List<RoomBooking> roomBookings = new ArrayList<>(guest.size);
+            for (int row = guest.first; row != NONE; row = intAt(row, NEXT_OF_GUEST)) {
+                roomBookings.add(new RoomBooking(roomNumbers.apply(intAt(row, ROOM)), view(row, guest.guestName)));
+            }
+            return roomBookings;
+        }
+    }
+
+    // The bookings arriving on a day, of one guest if it is given. Walks the shorter of the day's and the
+    // guest's rows and compares the guest id or the arrival day column.
+    List<RoomBooking> arrivals(long arrivalDay, GuestName guestName, IntFunction<RoomNumber> roomNumbers) {
+        Rows day = day(arrivalDay, false);
+        GuestRows guest = guestName == null ? null : guests.get(guestName);
+        if (day == null || guestName != null && guest == null) {
+            return List.of();
+        }
+        int daySize;
+        synchronized (day) {
+            daySize = day.size;
+        }
+        if (guest != null) {
+            synchronized (guest) {
+                if (guest.size < daySize) {
+                    List<RoomBooking> roomBookings = new ArrayList<>();
+                    for (int row = guest.first; row != NONE; row = intAt(row, NEXT_OF_GUEST)) {
+                        if (intAt(row, ARRIVAL_DAY) == arrivalDay) {
+                            roomBookings.add(new RoomBooking(roomNumbers.apply(intAt(row, ROOM)), view(row, guest.guestName)));
+                        }
+                    }
+                    return roomBookings;
+                }
+            }
+        }
+        synchronized (day) {
+            List<RoomBooking> roomBookings = new ArrayList<>(guest == null ? day.size : 1);
+            for (int row = day.first; row != NONE; row = intAt(row, NEXT_ON_DAY)) {
+                int guestId = intAt(row, GUEST);
+                if (guest == null || guestId == guest.id) {
+                    roomBookings.add(new RoomBooking(roomNumbers.apply(intAt(row, ROOM)), view(row, guestsById[guestId].guestName)));
+                }
+            }
+            return roomBookings;
+        }
+    }
+
+    // Sets or clears a status flag of the booking in the given generation of the row, false if the row
+    // holds another booking by now.
+    boolean setStatus(int row, int generation, byte flag, boolean set) {
+        ByteBuffer page = page(row);
+        int offset = column(STATE, row & (PAGE_ROWS - 1));
+        while (true) {
+            int state = (int) INTS.getVolatile(page, offset);
+            if (state >>> 8 != generation || (state & FREE) != 0) {
+                return false;
+            }
+            int updated = set ? state | flag : state & ~flag;
+            if (INTS.compareAndSet(page, offset, state, updated)) {
+                return true;
+            }
+        }
+    }
+
+    // the status of the booking in the given generation of the row, or -1 if the row holds another booking by now
+    int status(int row, int generation) {
+        int state = state(row);
+        return state >>> 8 != generation || (state & FREE) != 0 ? -1 : state & STATUS;
+    }
+
+    private Booking view(int row, GuestName guestName) {
+        long arrivalDay = intAt(row, ARRIVAL_DAY);
+        int state = state(row);
+        return new Booking(this, row, state >>> 8, idAt(row, state), arrivalDay, arrivalDay + nightsAt(row), guestName, (byte) (state & STATUS));
+    }
+
+    private boolean isLive(int row) {
+        return (state(row) & FREE) == 0;
+    }
+
+    private int newRow(RoomRows room) {
+        if (room.free != NONE) {
+            int row = room.free;
+            room.free = intAt(row, NEXT_IN_ROOM);
+            return row;
+        }
+        int row = rowCount.getAndIncrement();
+        if (row < 0) {
+            throw new IllegalStateException("Booking table is full");
+        }
+        ensurePage(row >>> PAGE_SHIFT);
+        return row;
+    }
+
+    private void ensurePage(int pageIndex) {
+        ByteBuffer[] current = pages;
+        if (pageIndex < current.length && current[pageIndex] != null) {
+            return;
+        }
+        synchronized (pagesLock) {
+            ByteBuffer[] grown = pages;
+            if (pageIndex >= grown.length) {
+                grown = Arrays.copyOf(grown, Math.max(grown.length * 2, pageIndex + 1));
+            }
+            if (grown[pageIndex] == null) {
+                ByteBuffer page = arena.allocate(PAGE_BYTES);
+                // a new row starts out free in generation 0
+                for (int index = 0; index < PAGE_ROWS; index++) {
+                    page.putInt(column(STATE, index), FREE);
+                }
+                grown[pageIndex] = page;
+            }
+            pages = grown;
+        }
+    }
+
+    private GuestRows guest(GuestName guestName) {
+        GuestRows guest = guests.get(guestName);
+        return guest != null ? guest : guests.computeIfAbsent(guestName.intern(), this::newGuest);
+    }
+
+    private GuestRows newGuest(GuestName guestName) {
+        synchronized (guestsLock) {
+            GuestRows guest = new GuestRows(guestCount, guestName);
+            GuestRows[] byId = guestsById;
+            if (guestCount == byId.length) {
+                byId = Arrays.copyOf(byId, byId.length * 2);
+            }
+            byId[guestCount++] = guest;
+            guestsById = byId;
+            return guest;
+        }
+    }
+
+    // the rows arriving on a day; days are looked up in a window of all days with arrivals, which grows as needed
+    private Rows day(long arrivalDay, boolean create) {
+        DayWindow window = days;
+        long index = arrivalDay - window.firstDay;
+        Rows day = index >= 0 && index < window.rows.length() ? window.rows.get((int) index) : null;
+        if (day != null || !create) {
+            return day;
+        }
+        synchronized (daysLock) {
+            window = days;
+            if (window.rows.length() == 0) {
+                window = new DayWindow(arrivalDay, new AtomicReferenceArray<>(64));
+            } else if (arrivalDay < window.firstDay || arrivalDay >= window.firstDay + window.rows.length()) {
+                long firstDay = Math.min(arrivalDay, window.firstDay);
+                long lastDay = Math.max(arrivalDay, window.firstDay + window.rows.length() - 1);
+                long length = Math.max(lastDay - firstDay + 1, 2L * window.rows.length());
+                if (length > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("Arrival days of the booking table span too many days");
+                }
+                // the window grows towards the day that did not fit
+                long grownFirstDay = arrivalDay < window.firstDay ? lastDay - length + 1 : firstDay;
+                AtomicReferenceArray<Rows> rows = new AtomicReferenceArray<>((int) length);
+                for (int i = 0; i < window.rows.length(); i++) {
+                    rows.set((int) (window.firstDay - grownFirstDay) + i, window.rows.get(i));
+                }
+                window = new DayWindow(grownFirstDay, rows);
+            }
+            int dayIndex = (int) (arrivalDay - window.firstDay);
+            day = window.rows.get(dayIndex);
+            if (day == null) {
+                day = new Rows();
+                window.rows.set(dayIndex, day);
+            }
+            days = window;
+            return day;
+        }
+    }
+
+    private void append(Rows rows, int row, int next, int previous) {
+        setIntAt(row, previous, rows.last);
+        setIntAt(row, next, NONE);
+        if (rows.last == NONE) {
+            rows.first = row;
+        } else {
+            setIntAt(rows.last, next, row);
+        }
+        rows.last = row;
+        rows.size++;
+    }
+
+    private void unlink(Rows rows, int row, int next, int previous) {
+        int nextRow = intAt(row, next);
+        int previousRow = intAt(row, previous);
+        if (previousRow == NONE) {
+            rows.first = nextRow;
+        } else {
+            setIntAt(previousRow, next, nextRow);
+        }
+        if (nextRow == NONE) {
+            rows.last = previousRow;
+        } else {
+            setIntAt(nextRow, previous, previousRow);
+        }
+        rows.size--;
+    }
+
+    private ByteBuffer page(int row) {
+        return pages[row >>> PAGE_SHIFT];
+    }
+
+    private static int column(int column, int index) {
+        return column + index * Integer.BYTES;
+    }
+
+    private int intAt(int row, int column) {
+        return page(row).getInt(column(column, row & (PAGE_ROWS - 1)));
+    }
+
+    private void setIntAt(int row, int column, int value) {
+        page(row).putInt(column(column, row & (PAGE_ROWS - 1)), value);
+    }
+
+    private int nightsAt(int row) {
+        return page(row).getShort(NIGHTS + (row & (PAGE_ROWS - 1)) * Short.BYTES);
+    }
+
+    private BookingId idAt(int row, int state) {
+        if ((state & OTHER_ID) != 0) {
+            return otherIds.get(row);
+        }
+        int index = row & (PAGE_ROWS - 1);
+        return BookingId.ofBits(page(row).getLong(ID_HIGH + index * Long.BYTES), page(row).getLong(ID_LOW + index * Long.BYTES));
+    }
+
+    private boolean hasId(int row, BookingId id) {
+        if ((state(row) & OTHER_ID) != 0) {
+            return id.equals(otherIds.get(row));
+        }
+        int index = row & (PAGE_ROWS - 1);
+        return id.isUuid()
+                && page(row).getLong(ID_HIGH + index * Long.BYTES) == id.mostSignificantBits()
+                && page(row).getLong(ID_LOW + index * Long.BYTES) == id.leastSignificantBits();
+    }
+
+    private int state(int row) {
+        return (int) INTS.getAcquire(page(row), column(STATE, row & (PAGE_ROWS - 1)));
+    }
+}
@@ -1,25 +1,42 @@
 package persistence;
 
 import java.time.LocalDate;
+import java.time.temporal.ChronoField;
 
-public record DepartureDate(LocalDate departureDate) {
+// kept as a day count since 1970-01-01, so comparisons and night counts are plain arithmetic
+public record DepartureDate(long epochDay) {
+    public DepartureDate {
+        ChronoField.EPOCH_DAY.checkValidValue(epochDay);
+    }
+    public DepartureDate(LocalDate departureDate){
+        this(departureDate.toEpochDay());
+    }
     public DepartureDate(int year, int month, int day){
         this(LocalDate.of(year, month, day));
     }
 
+    public LocalDate departureDate() {
+        return LocalDate.ofEpochDay(epochDay);
+    }
+
     public boolean isAfter(LocalDate date) {
-        return departureDate.isAfter(date);
+        return epochDay > date.toEpochDay();
     }
 
     public DepartureDate plusDays(int i) {
-        return new DepartureDate(departureDate.plusDays(i));
+        return new DepartureDate(epochDay + i);
     }
 
     public boolean isOnOrBefore(DepartureDate otherDate) {
-        return !otherDate.isAfter(departureDate);
+        return otherDate.epochDay <= epochDay;
     }
 
     public DepartureDate minusDays(int i) {
-        return new DepartureDate(departureDate.minusDays(i));
+        return new DepartureDate(epochDay - i);
+    }
+
+    @Override
+    public String toString() {
+        return "DepartureDate[departureDate=" + departureDate() + "]";
     }
 }
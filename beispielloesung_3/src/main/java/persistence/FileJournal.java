@@ -0,0 +1,490 @@
+package persistence;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.zip.CRC32;
+
+// Offsets are positions in the journal as if it had never been truncated. The file starts with a header
+// holding the offset of its first record, so a checkpoint can drop the records its snapshot covers.
+public class FileJournal implements Journal, Closeable {
+
+    private static final int MAGIC = 0x484a4e4c;
+    private static final int HEADER_LENGTH = Integer.BYTES + Long.BYTES;
+
+    private static final byte ROOM_ADDED = 1;
+    private static final byte BOOKING_ADDED = 2;
+    private static final byte BOOKING_CANCELLED = 3;
+    private static final byte CHECKED_IN = 4;
+    private static final byte INVOICED = 5;
+    private static final byte CHECKED_OUT = 6;
+    private static final byte PAYMENT_MADE = 7;
+    private static final byte CREDIT_USED = 8;
+    private static final byte PAYMENTS_SAVED = 9;
+    private static final byte INVOICE_SAVED = 10;
+
+    private static final int CHECKED_IN_FLAG = 1;
+    private static final int INVOICED_FLAG = 2;
+    private static final int CHECKED_OUT_FLAG = 4;
+
+    private final Path path;
+    // replaced when the journal is truncated, only used under the flush lock once the journal is open
+    private FileChannel channel;
+    // the offset of the first record in the file
+    private long start;
+    // group commit: writers append to the pending batch, whoever gets the flush lock first
+    // writes and forces everything pending, the others find their record already durable
+    private final Object flushLock = new Object();
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private long appendedSequence;
+    private long durableSequence;
+    private long durableLength;
+    // the first failed write or force, from then on nothing is appended or acknowledged any more
+    private volatile IOException failure;
+    private volatile boolean replaying;
+
+    private FileJournal(Path path, FileChannel channel) throws IOException {
+        this.path = path;
+        this.channel = channel;
+        if (channel.size() < HEADER_LENGTH) {
+            // a new journal, or one whose header was torn before anything was written after it
+            channel.truncate(0);
+            writeHeader(channel, 0);
+            channel.force(true);
+        }
+        this.start = readStart(channel, path);
+        this.durableLength = start + channel.size() - HEADER_LENGTH;
+        channel.position(channel.size());
+    }
+
+    public static FileJournal open(Path path) throws IOException {
+        return new FileJournal(path, FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE));
+    }
+
+    public void replay(RoomRepository rooms, PaymentRepository payments, InvoiceRepository invoices) throws IOException {
+        replayFrom(start, rooms, payments, invoices);
+    }
+
+    public long recover(Path snapshotFile, RoomRepository rooms, PaymentRepository payments, InvoiceRepository invoices) throws IOException {
+        replaying = true;
+        try {
+            return replayFrom(Snapshot.read(snapshotFile, rooms, payments, invoices), rooms, payments, invoices);
+        } finally {
+            replaying = false;
+        }
+    }
+
+    public long replayFrom(long offset, RoomRepository rooms, PaymentRepository payments, InvoiceRepository invoices) throws IOException {
+        replaying = true;
+        try {
+            synchronized (flushLock) {
+                long validLength = readRecords(channel, start, offset, Long.MAX_VALUE, rooms, payments, invoices);
+                // a torn record at the end was never acknowledged to a caller, it is dropped
+                channel.truncate(HEADER_LENGTH + validLength - start);
+                channel.position(HEADER_LENGTH + validLength - start);
+                durableLength = validLength;
+                return validLength;
+            }
+        } finally {
+            replaying = false;
+        }
+    }
+
+    // Reads the records between offset and limit without touching the file, so it can follow
+    // a journal that is still being written to. Returns the end of the last complete record.
+    static long replayFile(Path file, long offset, long limit, RoomRepository rooms, PaymentRepository payments, InvoiceRepository invoices) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return readRecords(channel, readStart(channel, file), offset, limit, rooms, payments, invoices);
+        }
+    }
+
+    // Drops the records before the offset, which a snapshot covers. The records after it are copied
+    // to a new file that is moved over the journal, so a crash leaves either the old or the new file.
+    public void truncateBefore(long offset) throws IOException {
+        synchronized (flushLock) {
+            if (offset <= start) {
+                return;
+            }
+            if (offset > durableLength) {
+                throw new IllegalArgumentException("Journal is durable up to " + durableLength + ", not " + offset);
+            }
+            if (failure != null) {
+                throw new IOException("Journal is unusable after a failed write", failure);
+            }
+            Path truncatedFile = path.resolveSibling(path.getFileName() + ".tmp");
+            try (FileChannel truncated = FileChannel.open(truncatedFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                writeHeader(truncated, offset);
+                long position = HEADER_LENGTH + offset - start;
+                long end = HEADER_LENGTH + durableLength - start;
+                while (position < end) {
+                    position += channel.transferTo(position, end - position, truncated);
+                }
+                truncated.force(true);
+            }
+            Files.move(truncatedFile, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            channel.close();
+            channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            channel.position(channel.size());
+            start = offset;
+        }
+    }
+
+    private static void writeHeader(FileChannel channel, long start) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).putInt(MAGIC).putLong(start).flip();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+    }
+
+    private static long readStart(FileChannel channel, Path file) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+        }
+        if (header.hasRemaining() || header.getInt(0) != MAGIC) {
+            throw new IllegalStateException("Not a journal: " + file);
+        }
+        return header.getLong(Integer.BYTES);
+    }
+
+    public long durableLength() {
+        synchronized (flushLock) {
+            return durableLength;
+        }
+    }
+
+    private static long readRecords(FileChannel channel, long start, long offset, long limit, RoomRepository rooms, PaymentRepository payments, InvoiceRepository invoices) throws IOException {
+        if (offset < start) {
+            throw new IllegalStateException("Journal starts at " + start + ", the records from " + offset + " on are gone");
+        }
+        channel.position(HEADER_LENGTH + offset - start);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+        long validLength = offset;
+        long fileLength = start + channel.size() - HEADER_LENGTH;
+        while (true) {
+            byte[] record = readRecord(in, fileLength - validLength - Integer.BYTES - Long.BYTES);
+            if (record == null || validLength + Integer.BYTES + Long.BYTES + record.length > limit) {
+                return validLength;
+            }
+            apply(new DataInputStream(new ByteArrayInputStream(record)), rooms, payments, invoices);
+            validLength += Integer.BYTES + Long.BYTES + record.length;
+        }
+    }
+
+    // a length beyond the end of the file can only come from a torn record
+    private static byte[] readRecord(DataInputStream in, long maxLength) throws IOException {
+        try {
+            int length = in.readInt();
+            long checksum = in.readLong();
+            if (length <= 0 || length > maxLength) {
+                return null;
+            }
+            byte[] record = new byte[length];
+            in.readFully(record);
+            return checksum(record) == checksum ? record : null;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    private static void apply(DataInputStream in, RoomRepository rooms, PaymentRepository payments, InvoiceRepository invoices) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case ROOM_ADDED -> rooms.save(new Room(new RoomNumber(in.readUTF()), new ArrayList<>()));
+            case BOOKING_ADDED -> {
+                RoomNumber roomNumber = new RoomNumber(in.readUTF());
+                rooms.addBooking(rooms.getRooms().get(roomNumber), readBooking(in));
+            }
+            case BOOKING_CANCELLED -> {
+                RoomNumber roomNumber = new RoomNumber(in.readUTF());
+                rooms.cancelBooking(rooms.getRooms().get(roomNumber), findBooking(rooms, in.readUTF()));
+            }
+            case CHECKED_IN -> {
+                RoomNumber roomNumber = new RoomNumber(in.readUTF());
+                rooms.markBookingAsCheckedIn(roomNumber, findBooking(rooms, in.readUTF()));
+            }
+            case INVOICED -> {
+                in.readUTF();
+                findBooking(rooms, in.readUTF()).setInvoiced(true);
+            }
+            case CHECKED_OUT -> {
+                RoomNumber roomNumber = new RoomNumber(in.readUTF());
+                rooms.markBookingAsCheckedOut(roomNumber, findBooking(rooms, in.readUTF()));
+            }
+            case PAYMENT_MADE -> payments.add(readPayment(in));
+            case CREDIT_USED -> {
+                GuestName guestName = new GuestName(in.readUTF()).intern();
+                payments.useCredit(guestName, in.readInt(), in.readLong());
+            }
+            case PAYMENTS_SAVED -> {
+                GuestName guestName = new GuestName(in.readUTF()).intern();
+                int count = in.readInt();
+                List<Payment> guestPayments = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    guestPayments.add(readPayment(in));
+                }
+                payments.save(guestName, guestPayments);
+            }
+            case INVOICE_SAVED -> {
+                InvoiceId id = new InvoiceId(in.readUTF());
+                GuestName guestName = new GuestName(in.readUTF()).intern();
+                Amount totalAmount = Amount.ofCents(in.readLong());
+                int roomCount = in.readInt();
+                Map<RoomNumber, List<Booking>> bookingsForRooms = new HashMap<>();
+                for (int i = 0; i < roomCount; i++) {
+                    RoomNumber roomNumber = new RoomNumber(in.readUTF());
+                    int bookingCount = in.readInt();
+                    List<Booking> bookings = new ArrayList<>(bookingCount);
+                    for (int j = 0; j < bookingCount; j++) {
+                        // a booking still in its room is shared with the invoice, a cancelled one is restored from the record
+                        Booking invoicedBooking = readBooking(in);
+                        bookings.add(rooms.findBooking(invoicedBooking.getId())
+                                .filter(roomBooking -> roomBooking.roomNumber().equals(roomNumber))
+                                .map(RoomBooking::booking)
+                                .orElse(invoicedBooking));
+                    }
+                    bookingsForRooms.put(roomNumber, bookings);
+                }
+                invoices.save(new Invoice(id, guestName, bookingsForRooms, totalAmount));
+            }
+            default -> throw new IllegalStateException("Unknown journal record type " + type);
+        }
+    }
+
+    private static Booking findBooking(RoomRepository rooms, String bookingId) {
+        return rooms.findBooking(new BookingId(bookingId))
+                .orElseThrow(() -> new IllegalStateException("Journal refers to unknown booking " + bookingId))
+                .booking();
+    }
+
+    private static Booking readBooking(DataInputStream in) throws IOException {
+        Booking booking = new Booking(
+                new BookingId(in.readUTF()),
+                new ArrivalDate(in.readLong()),
+                new DepartureDate(in.readLong()),
+                new GuestName(in.readUTF()).intern());
+        int flags = in.readByte();
+        booking.setCheckedIn((flags & CHECKED_IN_FLAG) != 0);
+        booking.setInvoiced((flags & INVOICED_FLAG) != 0);
+        booking.setCheckedOut((flags & CHECKED_OUT_FLAG) != 0);
+        return booking;
+    }
+
+    private static Payment readPayment(DataInputStream in) throws IOException {
+        GuestName guestName = new GuestName(in.readUTF()).intern();
+        PaymentDate paymentDate = new PaymentDate(LocalDate.ofEpochDay(in.readLong()));
+        Amount paidAmount = Amount.ofCents(in.readLong());
+        return new Payment(guestName, paidAmount, paymentDate, in.readLong());
+    }
+
+    @Override
+    public void roomAdded(RoomNumber roomNumber) {
+        append(out -> {
+            out.writeByte(ROOM_ADDED);
+            out.writeUTF(roomNumber.number());
+        });
+    }
+
+    @Override
+    public void bookingAdded(RoomNumber roomNumber, Booking booking) {
+        append(out -> {
+            out.writeByte(BOOKING_ADDED);
+            out.writeUTF(roomNumber.number());
+            writeBooking(out, booking);
+        });
+    }
+
+    @Override
+    public void bookingCancelled(RoomNumber roomNumber, Booking booking) {
+        appendBookingEvent(BOOKING_CANCELLED, roomNumber, booking);
+    }
+
+    @Override
+    public void checkedIn(RoomNumber roomNumber, Booking booking) {
+        appendBookingEvent(CHECKED_IN, roomNumber, booking);
+    }
+
+    @Override
+    public void invoiced(RoomNumber roomNumber, Booking booking) {
+        appendBookingEvent(INVOICED, roomNumber, booking);
+    }
+
+    @Override
+    public void checkedOut(RoomNumber roomNumber, Booking booking) {
+        appendBookingEvent(CHECKED_OUT, roomNumber, booking);
+    }
+
+    @Override
+    public void paymentMade(Payment payment) {
+        append(out -> {
+            out.writeByte(PAYMENT_MADE);
+            writePayment(out, payment);
+        });
+    }
+
+    @Override
+    public void creditUsed(GuestName guestName, int paymentIndex, long cents) {
+        append(out -> {
+            out.writeByte(CREDIT_USED);
+            out.writeUTF(guestName.guestName());
+            out.writeInt(paymentIndex);
+            out.writeLong(cents);
+        });
+    }
+
+    @Override
+    public void paymentsSaved(GuestName guestName, List<Payment> payments) {
+        append(out -> {
+            out.writeByte(PAYMENTS_SAVED);
+            out.writeUTF(guestName.guestName());
+            out.writeInt(payments.size());
+            for (Payment payment : payments) {
+                writePayment(out, payment);
+            }
+        });
+    }
+
+    @Override
+    public void invoiceSaved(Invoice invoice) {
+        append(out -> {
+            out.writeByte(INVOICE_SAVED);
+            out.writeUTF(invoice.id().id());
+            out.writeUTF(invoice.guestName().guestName());
+            out.writeLong(invoice.totalAmount().cents());
+            out.writeInt(invoice.bookingsForRooms().size());
+            for (Map.Entry<RoomNumber, List<Booking>> bookingsForRoom : invoice.bookingsForRooms().entrySet()) {
+                out.writeUTF(bookingsForRoom.getKey().number());
+                out.writeInt(bookingsForRoom.getValue().size());
+                // the booking may be cancelled before replay gets here, so the invoice keeps all of it
+                for (Booking booking : bookingsForRoom.getValue()) {
+                    writeBooking(out, booking);
+                }
+            }
+        });
+    }
+
+    private void appendBookingEvent(byte type, RoomNumber roomNumber, Booking booking) {
+        append(out -> {
+            out.writeByte(type);
+            out.writeUTF(roomNumber.number());
+            out.writeUTF(booking.getId().id());
+        });
+    }
+
+    private static void writeBooking(DataOutputStream out, Booking booking) throws IOException {
+        out.writeUTF(booking.getId().id());
+        out.writeLong(booking.arrivalDay());
+        out.writeLong(booking.departureDay());
+        out.writeUTF(booking.getGuestName().guestName());
+        out.writeByte((booking.isCheckedIn() ? CHECKED_IN_FLAG : 0)
+                | (booking.isInvoiced() ? INVOICED_FLAG : 0)
+                | (booking.isCheckedOut() ? CHECKED_OUT_FLAG : 0));
+    }
+
+    private static void writePayment(DataOutputStream out, Payment payment) throws IOException {
+        out.writeUTF(payment.getGuestName().guestName());
+        out.writeLong(payment.getPaymentDate().paymentDate().toEpochDay());
+        out.writeLong(payment.getPaidAmount().cents());
+        out.writeLong(payment.getUsedAmount().cents());
+    }
+
+    private interface RecordWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    // only appends to the pending batch, so callers can append under their own locks and wait for the flush after releasing them
+    private void append(RecordWriter writer) {
+        if (replaying) {
+            return;
+        }
+        if (failure != null) {
+            throw new UncheckedIOException(new IOException("Journal is unusable after a failed write", failure));
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            writer.write(new DataOutputStream(bytes));
+            byte[] record = bytes.toByteArray();
+            synchronized (this) {
+                DataOutputStream out = new DataOutputStream(pending);
+                out.writeInt(record.length);
+                out.writeLong(checksum(record));
+                out.write(record);
+                appendedSequence++;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // waits until everything appended so far, the caller's records included, is durable
+    @Override
+    public void awaitDurable() {
+        long sequence;
+        synchronized (this) {
+            sequence = appendedSequence;
+        }
+        try {
+            awaitDurable(sequence);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void awaitDurable(long sequence) throws IOException {
+        synchronized (flushLock) {
+            if (durableSequence >= sequence) {
+                return;
+            }
+            if (failure != null) {
+                throw new IOException("Journal is unusable after a failed write", failure);
+            }
+            ByteBuffer batch;
+            long batchSequence;
+            synchronized (this) {
+                batch = ByteBuffer.wrap(pending.toByteArray());
+                pending = new ByteArrayOutputStream();
+                batchSequence = appendedSequence;
+            }
+            try {
+                while (batch.hasRemaining()) {
+                    channel.write(batch);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                // the batch held records of other writers too: they must fail as well instead of finding
+                // their sequence covered by a later flush, and a partly written batch must not stay as the tail
+                failure = e;
+                try {
+                    channel.truncate(HEADER_LENGTH + durableLength - start);
+                } catch (IOException truncateFailure) {
+                    e.addSuppressed(truncateFailure);
+                }
+                throw e;
+            }
+            durableSequence = batchSequence;
+            durableLength = start + channel.position() - HEADER_LENGTH;
+        }
+    }
+
+    private static long checksum(byte[] record) {
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        return crc.getValue();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (failure == null) {
+            awaitDurable();
+        }
+        synchronized (flushLock) {
+            channel.close();
+        }
+    }
+}
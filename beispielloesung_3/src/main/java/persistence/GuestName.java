@@ -1,8 +1,50 @@
 package persistence;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 public record GuestName(String guestName) {
 
+    // one canonical instance per guest, so the stored bookings and payments share it; held weakly,
+    // so a guest nothing refers to any more is dropped from the pool
+    private static final Map<String, Canonical> CANONICAL = new ConcurrentHashMap<>();
+    private static final ReferenceQueue<GuestName> COLLECTED = new ReferenceQueue<>();
+
     public GuestName {
         if(guestName == null || guestName.isBlank()) { throw new IllegalArgumentException("guestName cannot be null"); }
     }
+
+    public GuestName intern() {
+        removeCollected();
+        while (true) {
+            Canonical current = CANONICAL.get(guestName);
+            GuestName canonical = current == null ? null : current.get();
+            if (canonical != null) {
+                return canonical;
+            }
+            Canonical own = new Canonical(this);
+            if (current == null ? CANONICAL.putIfAbsent(guestName, own) == null : CANONICAL.replace(guestName, current, own)) {
+                return this;
+            }
+        }
+    }
+
+    private static void removeCollected() {
+        for (Reference<? extends GuestName> collected = COLLECTED.poll(); collected != null; collected = COLLECTED.poll()) {
+            Canonical canonical = (Canonical) collected;
+            CANONICAL.remove(canonical.name, canonical);
+        }
+    }
+
+    private static final class Canonical extends WeakReference<GuestName> {
+        private final String name;
+
+        private Canonical(GuestName guestName) {
+            super(guestName, COLLECTED);
+            this.name = guestName.guestName();
+        }
+    }
 }
@@ -0,0 +1,11 @@
+package persistence;
+
+// position of the next invoice in the guest's invoices, in creation order
+public record InvoiceCursor(int position) {
+
+    public static final InvoiceCursor FIRST = new InvoiceCursor(0);
+
+    public InvoiceCursor {
+        if (position < 0) { throw new IllegalArgumentException("InvoiceCursor must not be negative"); }
+    }
+}
@@ -0,0 +1,7 @@
+package persistence;
+
+import java.util.List;
+import java.util.Optional;
+
+public record InvoicePage(List<Invoice> invoices, Optional<InvoiceCursor> next) {
+}
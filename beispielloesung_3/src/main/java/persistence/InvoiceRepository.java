@@ -1,24 +1,86 @@
 package persistence;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 public class InvoiceRepository {
 
-    private final Map<InvoiceId, Invoice> invoices = new HashMap<>();
+    private static final int STREAM_PAGE_SIZE = 100;
 
-    public List<Invoice> loadFor(GuestName guestName){
-        return invoices.values().stream()
-                .filter(invoice -> invoice.guestName().equals(guestName))
-                .toList();
+    private final Map<InvoiceId, Invoice> invoices = new LinkedHashMap<>();
+    // invoices are appended in creation order and an invoice moved to another guest leaves a null behind,
+    // so a position in a guest's list stays valid as a cursor
+    private final Map<GuestName, List<Invoice>> invoicesByGuestName = new HashMap<>();
+    private final Journal journal;
+
+    public InvoiceRepository() {
+        this(Journal.NONE);
+    }
+
+    public InvoiceRepository(Journal journal) {
+        this.journal = journal;
+    }
+
+    public synchronized List<Invoice> loadFor(GuestName guestName){
+        return invoicesByGuestName.getOrDefault(guestName, List.of()).stream().filter(Objects::nonNull).toList();
+    }
+
+    public synchronized InvoicePage loadPage(GuestName guestName, InvoiceCursor cursor, int pageSize){
+        if (pageSize <= 0) { throw new IllegalArgumentException("Page size must be positive"); }
+        List<Invoice> invoicesOfGuest = invoicesByGuestName.getOrDefault(guestName, List.of());
+        List<Invoice> page = new ArrayList<>(Math.min(pageSize, invoicesOfGuest.size()));
+        int position = Math.min(cursor.position(), invoicesOfGuest.size());
+        while (position < invoicesOfGuest.size() && page.size() < pageSize) {
+            Invoice invoice = invoicesOfGuest.get(position++);
+            if (invoice != null) {
+                page.add(invoice);
+            }
+        }
+        Optional<InvoiceCursor> next = position < invoicesOfGuest.size() ? Optional.of(new InvoiceCursor(position)) : Optional.empty();
+        return new InvoicePage(List.copyOf(page), next);
+    }
+
+    // fetches one page at a time as the stream is consumed
+    public Stream<Invoice> streamFor(GuestName guestName){
+        return Stream.iterate(loadPage(guestName, InvoiceCursor.FIRST, STREAM_PAGE_SIZE),
+                        page -> !page.invoices().isEmpty(),
+                        page -> page.next()
+                                .map(cursor -> loadPage(guestName, cursor, STREAM_PAGE_SIZE))
+                                .orElse(new InvoicePage(List.of(), Optional.empty())))
+                .flatMap(page -> page.invoices().stream());
+    }
+
+    public synchronized List<Invoice> loadAll(){
+        return List.copyOf(invoices.values());
     }
 
-    public Invoice getFor(InvoiceId invoiceId){
+    public synchronized Invoice getFor(InvoiceId invoiceId){
         return invoices.get(invoiceId);
     }
 
+    // the record is appended under the monitor, so saves of the same invoice are journaled in the order they
+    // were applied, and the flush is awaited outside of it, so saves of different invoices share one flush
     public void save(Invoice invoice){
-        invoices.put(invoice.id(), invoice);
+        synchronized (this) {
+            Invoice previous = invoices.put(invoice.id(), invoice);
+            List<Invoice> invoicesOfGuest = invoicesByGuestName.computeIfAbsent(invoice.guestName(), guestName -> new ArrayList<>());
+            if (previous != null && previous.guestName().equals(invoice.guestName())) {
+                invoicesOfGuest.set(invoicesOfGuest.indexOf(previous), invoice);
+            } else {
+                if (previous != null) {
+                    List<Invoice> invoicesOfPreviousGuest = invoicesByGuestName.get(previous.guestName());
+                    invoicesOfPreviousGuest.set(invoicesOfPreviousGuest.indexOf(previous), null);
+                }
+                invoicesOfGuest.add(invoice);
+            }
+            journal.invoiceSaved(invoice);
+        }
+        journal.awaitDurable();
     }
 }
@@ -0,0 +1,26 @@
+package persistence;
+
+import java.util.List;
+
+// A redo log: the repositories change their state in memory first and journal the change afterwards.
+// The change is appended under the lock that guards it, so the records of one booking, guest or invoice
+// are in the order of the changes; awaitDurable is called after releasing the lock, so concurrent
+// changes share one flush. A change whose journal call throws stays visible in memory without being
+// durable, so a failed journal refuses all further changes and the state has to be recovered from the journal.
+public interface Journal {
+
+    Journal NONE = new Journal() {};
+
+    default void roomAdded(RoomNumber roomNumber) {}
+    default void bookingAdded(RoomNumber roomNumber, Booking booking) {}
+    default void bookingCancelled(RoomNumber roomNumber, Booking booking) {}
+    default void checkedIn(RoomNumber roomNumber, Booking booking) {}
+    default void invoiced(RoomNumber roomNumber, Booking booking) {}
+    default void checkedOut(RoomNumber roomNumber, Booking booking) {}
+    default void paymentMade(Payment payment) {}
+    default void creditUsed(GuestName guestName, int paymentIndex, long cents) {}
+    default void paymentsSaved(GuestName guestName, List<Payment> payments) {}
+    default void invoiceSaved(Invoice invoice) {}
+    // returns once the records appended so far by the calling thread are durable
+    default void awaitDurable() {}
+}
@@ -0,0 +1,99 @@
+package persistence;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class JournaledRepositories implements Closeable {
+
+    private static final System.Logger LOGGER = System.getLogger(JournaledRepositories.class.getName());
+
+    private final Path journalFile;
+    private final Path snapshotFile;
+    private final FileJournal journal;
+    private final RoomRepository rooms;
+    private final PaymentRepository payments;
+    private final InvoiceRepository invoices;
+    private ScheduledExecutorService checkpoints;
+
+    private JournaledRepositories(Path directory, FileJournal journal) {
+        this.journalFile = directory.resolve("hotel.journal");
+        this.snapshotFile = directory.resolve("hotel.snapshot");
+        this.journal = journal;
+        this.rooms = new RoomRepository(journal);
+        this.payments = new PaymentRepository(journal);
+        this.invoices = new InvoiceRepository(journal);
+    }
+
+    // loads the latest snapshot and replays only the part of the journal written after it
+    public static JournaledRepositories open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        JournaledRepositories repositories = new JournaledRepositories(directory, FileJournal.open(directory.resolve("hotel.journal")));
+        repositories.journal.recover(repositories.snapshotFile, repositories.rooms, repositories.payments, repositories.invoices);
+        return repositories;
+    }
+
+    public RoomRepository rooms() {
+        return rooms;
+    }
+
+    public PaymentRepository payments() {
+        return payments;
+    }
+
+    public InvoiceRepository invoices() {
+        return invoices;
+    }
+
+    // Brings the snapshot up to the durable end of the journal and drops the journal records it covers,
+    // so neither the journal nor the replay at the next start grow beyond one checkpoint interval.
+    // The live repositories are not touched: the last snapshot and the journal after it are replayed
+    // into private copies, so writers keep going while the snapshot is taken.
+    public synchronized void checkpoint() throws IOException {
+        RoomRepository snapshotRooms = new RoomRepository();
+        PaymentRepository snapshotPayments = new PaymentRepository();
+        InvoiceRepository snapshotInvoices = new InvoiceRepository();
+        long offset = Snapshot.read(snapshotFile, snapshotRooms, snapshotPayments, snapshotInvoices);
+        long durableLength = journal.durableLength();
+        if (offset == durableLength) {
+            return;
+        }
+        offset = FileJournal.replayFile(journalFile, offset, durableLength, snapshotRooms, snapshotPayments, snapshotInvoices);
+        Snapshot.write(snapshotFile, offset, snapshotRooms, snapshotPayments, snapshotInvoices);
+        journal.truncateBefore(offset);
+    }
+
+    public synchronized void startCheckpoints(Duration interval) {
+        if (checkpoints != null) {
+            return;
+        }
+        checkpoints = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "checkpoints");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // a task that throws is never run again, so a failed checkpoint is reported and retried after the next interval
+        checkpoints.scheduleWithFixedDelay(() -> {
+            try {
+                checkpoint();
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(System.Logger.Level.WARNING, "Checkpoint failed, retrying in " + interval, e);
+            }
+        }, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (checkpoints != null) {
+                checkpoints.shutdownNow();
+            }
+        }
+        journal.close();
+    }
+}
@@ -0,0 +1,45 @@
+package persistence;
+
+import java.nio.ByteBuffer;
+
+// The memory a RoomRepository keeps its booking table, id index, availability index and room calendars in.
+// On the heap every buffer is an array of its own. Off the heap the buffers are slices of large direct
+// chunks shared by all of them, so the heap holds a handful of chunk objects however many bookings there are.
+// Off-heap memory is handed out and never taken back: a calendar or an index that grows leaves its old
+// buffer behind, which growing by doubling keeps below the size of the new one.
+final class MemoryArena {
+
+    static final MemoryArena HEAP = new MemoryArena(BookingStorage.HEAP);
+
+    private static final int CHUNK_BYTES = 4 << 20;
+
+    private final BookingStorage storage;
+    private ByteBuffer chunk;
+    private int used;
+
+    private MemoryArena(BookingStorage storage) {
+        this.storage = storage;
+    }
+
+    // heap buffers are collected like any object, so all heap repositories share one arena
+    static MemoryArena of(BookingStorage storage) {
+        return storage == BookingStorage.HEAP ? HEAP : new MemoryArena(storage);
+    }
+
+    // a zeroed buffer in native byte order, aligned to 8 bytes
+    ByteBuffer allocate(int bytes) {
+        if (storage == BookingStorage.HEAP || bytes > CHUNK_BYTES / 4) {
+            return storage.allocate(bytes);
+        }
+        synchronized (this) {
+            int aligned = (bytes + 7) & ~7;
+            if (chunk == null || used + aligned > CHUNK_BYTES) {
+                chunk = storage.allocate(CHUNK_BYTES);
+                used = 0;
+            }
+            ByteBuffer buffer = chunk.slice(used, bytes).order(chunk.order());
+            used += aligned;
+            return buffer;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package persistence;
+
+import java.nio.LongBuffer;
+import java.time.LocalDate;
+
+class OccupancyCalendar {
+
+    private final MemoryArena arena;
+    // a calendar over a fixed window of words, e.g. in a mapped file, never grows
+    private final boolean fixed;
+    // one bit per night, bit (day % 64) of word (day / 64) with day = LocalDate.toEpochDay()
+    private long firstWord;
+    private LongBuffer words;
+
+    OccupancyCalendar(MemoryArena arena) {
+        this.arena = arena;
+        this.fixed = false;
+        this.words = allocate(0);
+    }
+
+    OccupancyCalendar(LongBuffer window, long firstWord) {
+        this.arena = null;
+        this.fixed = true;
+        this.firstWord = firstWord;
+        this.words = window;
+    }
+
+    // a copy of this calendar kept in the given arena
+    OccupancyCalendar copyTo(MemoryArena target) {
+        OccupancyCalendar copy = new OccupancyCalendar(target);
+        copy.firstWord = firstWord;
+        copy.words = copy.allocate(words.capacity());
+        copy.words.put(0, words, 0, words.capacity());
+        return copy;
+    }
+
+    MemoryArena arena() {
+        return arena;
+    }
+
+    // replaces the nights of this calendar with those of the given one
+    void copyFrom(OccupancyCalendar source) {
+        for (int index = 0; index < words.capacity(); index++) {
+            words.put(index, 0L);
+        }
+        for (int index = 0; index < source.words.capacity(); index++) {
+            long word = source.firstWord + index;
+            long bits = source.words.get(index);
+            if (bits != 0) {
+                ensureCovers(word, word);
+                int target = (int) (word - firstWord);
+                words.put(target, words.get(target) | bits);
+            }
+        }
+    }
+
+    boolean isFree(long fromDay, long toDayExclusive) {
+        if (fromDay >= toDayExclusive) {
+            return true;
+        }
+        long lastDay = toDayExclusive - 1;
+        if (fixed && (Math.floorDiv(fromDay, 64) < firstWord || Math.floorDiv(lastDay, 64) >= firstWord + words.capacity())) {
+            // nights outside of a fixed window can never be booked
+            return false;
+        }
+        long fromWord = Math.max(Math.floorDiv(fromDay, 64), firstWord);
+        long toWord = Math.min(Math.floorDiv(lastDay, 64), firstWord + words.capacity() - 1);
+        for (long word = fromWord; word <= toWord; word++) {
+            if ((words.get((int) (word - firstWord)) & mask(word, fromDay, lastDay)) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void occupy(long fromDay, long toDayExclusive) {
+        if (fromDay >= toDayExclusive) {
+            return;
+        }
+        long lastDay = toDayExclusive - 1;
+        long fromWord = Math.floorDiv(fromDay, 64);
+        long toWord = Math.floorDiv(lastDay, 64);
+        ensureCovers(fromWord, toWord);
+        for (long word = fromWord; word <= toWord; word++) {
+            int index = (int) (word - firstWord);
+            words.put(index, words.get(index) | mask(word, fromDay, lastDay));
+        }
+    }
+
+    void release(long fromDay, long toDayExclusive) {
+        if (fromDay >= toDayExclusive) {
+            return;
+        }
+        long lastDay = toDayExclusive - 1;
+        long fromWord = Math.max(Math.floorDiv(fromDay, 64), firstWord);
+        long toWord = Math.min(Math.floorDiv(lastDay, 64), firstWord + words.capacity() - 1);
+        for (long word = fromWord; word <= toWord; word++) {
+            int index = (int) (word - firstWord);
+            words.put(index, words.get(index) & ~mask(word, fromDay, lastDay));
+        }
+    }
+
+    private static long mask(long word, long fromDay, long lastDay) {
+        long wordStart = word * 64;
+        int low = (int) Math.max(0, fromDay - wordStart);
+        int high = (int) Math.min(63, lastDay - wordStart);
+        return (-1L << low) & (-1L >>> (63 - high));
+    }
+
+    private void ensureCovers(long fromWord, long toWord) {
+        if (fixed) {
+            if (fromWord < firstWord || toWord >= firstWord + words.capacity()) {
+                throw new IllegalArgumentException("Stay lies outside of the room calendar from " + LocalDate.ofEpochDay(firstWord * 64)
+                        + " to " + LocalDate.ofEpochDay((firstWord + words.capacity()) * 64 - 1));
+            }
+            return;
+        }
+        if (words.capacity() == 0) {
+            firstWord = fromWord;
+            words = allocate((int) (toWord - fromWord + 1));
+            return;
+        }
+        long lastWord = firstWord + words.capacity() - 1;
+        if (fromWord >= firstWord && toWord <= lastWord) {
+            return;
+        }
+        long newFirstWord = Math.min(fromWord, firstWord);
+        long newLastWord = Math.max(toWord, lastWord);
+        LongBuffer newWords = allocate((int) (newLastWord - newFirstWord + 1));
+        newWords.put((int) (firstWord - newFirstWord), words, 0, words.capacity());
+        firstWord = newFirstWord;
+        words = newWords;
+    }
+
+    private LongBuffer allocate(int wordCount) {
+        return arena.allocate(wordCount * Long.BYTES).asLongBuffer();
+    }
+}
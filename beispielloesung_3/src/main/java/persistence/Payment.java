@@ -5,15 +5,21 @@ import java.time.LocalDate;
 public class Payment {
 
     private final Amount paidAmount;
-    private Amount usedAmount;
+    private long usedCents;
     private final GuestName guestName;
     private final PaymentDate paymentDate;
 
     public Payment(GuestName guestName, Amount paidAmount){
-        this.guestName = guestName;
+        this.guestName = guestName.intern();
         this.paidAmount = paidAmount;
         this.paymentDate = new PaymentDate(LocalDate.now());
-        this.usedAmount= new Amount(0.0);
+    }
+
+    Payment(GuestName guestName, Amount paidAmount, PaymentDate paymentDate, long usedCents){
+        this.guestName = guestName.intern();
+        this.paidAmount = paidAmount;
+        this.paymentDate = paymentDate;
+        this.usedCents = usedCents;
     }
 
     public Amount getPaidAmount() {
@@ -21,7 +27,11 @@ public class Payment {
     }
 
     public Amount getUsedAmount() {
-        return usedAmount;
+        return Amount.ofCents(usedCents);
+    }
+
+    public long getRemainingCreditInCents() {
+        return paidAmount.cents() - usedCents;
     }
 
     public GuestName getGuestName() {
@@ -32,7 +42,7 @@ public class Payment {
         return paymentDate;
     }
 
-    public void reduceCreditBy(Amount amount) {
-        usedAmount = usedAmount.add(amount);
+    void reduceCreditByCents(long cents) {
+        usedCents += cents;
     }
 }
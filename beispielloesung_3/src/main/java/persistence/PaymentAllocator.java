@@ -0,0 +1,57 @@
+package persistence;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+// Keeps the payments of one guest that still have credit, ordered by the allocation policy.
+// The order may depend on the remaining credit, so a partly used payment is taken out and put back
+// to move to its new place, and an exhausted one is dropped.
+class PaymentAllocator {
+
+    private final PriorityQueue<OpenPayment> openPayments;
+
+    PaymentAllocator(AllocationPolicy policy) {
+        this.openPayments = new PriorityQueue<>(Comparator.comparing(OpenPayment::payment, policy.order())
+                .thenComparingInt(OpenPayment::index));
+    }
+
+    void add(int index, Payment payment) {
+        if (payment.getRemainingCreditInCents() > 0) {
+            openPayments.add(new OpenPayment(index, payment));
+        }
+    }
+
+    void reset(List<Payment> payments) {
+        openPayments.clear();
+        for (int i = 0; i < payments.size(); i++) {
+            add(i, payments.get(i));
+        }
+    }
+
+    // uses up the given amount, the caller has made sure the open payments cover it
+    void allocate(long cents, CreditUse creditUse) {
+        long remainingCents = cents;
+        while (remainingCents > 0) {
+            OpenPayment openPayment = openPayments.peek();
+            long availableCents = openPayment.payment().getRemainingCreditInCents();
+            long usedCents = Math.min(availableCents, remainingCents);
+            if (usedCents > 0) {
+                openPayment.payment().reduceCreditByCents(usedCents);
+                creditUse.used(openPayment.index(), openPayment.payment(), usedCents);
+                remainingCents -= usedCents;
+            }
+            openPayments.poll();
+            if (usedCents < availableCents) {
+                openPayments.add(openPayment);
+            }
+        }
+    }
+
+    interface CreditUse {
+        void used(int paymentIndex, Payment payment, long cents);
+    }
+
+    private record OpenPayment(int index, Payment payment) {
+    }
+}
@@ -1,20 +1,129 @@
 package persistence;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 public class PaymentRepository {
 
-    private final Map<String, List<Payment>> payments = new HashMap<>();
+    // one ledger per guest, its monitor serializes the payments of that guest only;
+    // changes are journaled under it and their flush is awaited after releasing it
+    private final Map<GuestName, Ledger> ledgers = new ConcurrentHashMap<>();
+    private final Journal journal;
+    private final AllocationPolicy allocationPolicy;
+
+    public PaymentRepository() {
+        this(Journal.NONE);
+    }
+
+    public PaymentRepository(Journal journal) {
+        this(journal, AllocationPolicy.OLDEST_FIRST);
+    }
+
+    public PaymentRepository(Journal journal, AllocationPolicy allocationPolicy) {
+        this.journal = journal;
+        this.allocationPolicy = allocationPolicy;
+    }
 
     public List<Payment> load(GuestName guestName){
-        List<Payment> guestPayments = payments.get(guestName.guestName());
-        return guestPayments == null ? new ArrayList<>() : guestPayments;
+        Ledger ledger = ledgers.get(guestName);
+        if (ledger == null) {
+            return new ArrayList<>();
+        }
+        synchronized (ledger) {
+            return new ArrayList<>(ledger.payments);
+        }
+    }
+
+    public List<GuestName> findAllGuestNames(){
+        return List.copyOf(ledgers.keySet());
     }
 
     public void save(GuestName guestName, List<Payment> guestPayments){
-        payments.put(guestName.guestName(), guestPayments);
+        Ledger ledger = ledgerOf(guestName);
+        synchronized (ledger) {
+            ledger.payments = new ArrayList<>(guestPayments);
+            ledger.allocator.reset(ledger.payments);
+            ledger.creditInCents = guestPayments.stream().mapToLong(Payment::getRemainingCreditInCents).sum();
+            journal.paymentsSaved(guestName, guestPayments);
+        }
+        journal.awaitDurable();
+    }
+
+    public void add(Payment payment){
+        Ledger ledger = ledgerOf(payment.getGuestName());
+        synchronized (ledger) {
+            ledger.payments.add(payment);
+            ledger.allocator.add(ledger.payments.size() - 1, payment);
+            ledger.creditInCents += payment.getRemainingCreditInCents();
+            journal.paymentMade(payment);
+        }
+        journal.awaitDurable();
+    }
+
+    // uses up the given amount of the guest's credit if it suffices, otherwise leaves it untouched
+    public boolean allocate(GuestName guestName, long cents){
+        // a guest who never paid has no ledger and gets none for being charged
+        Ledger ledger = ledgers.get(guestName);
+        if (ledger == null) {
+            return cents <= 0;
+        }
+        synchronized (ledger) {
+            if (ledger.creditInCents < cents) {
+                return false;
+            }
+            if (ledger.allocatorIsStale) {
+                ledger.allocator.reset(ledger.payments);
+                ledger.allocatorIsStale = false;
+            }
+            ledger.allocator.allocate(cents, (paymentIndex, payment, usedCents) -> journal.creditUsed(guestName, paymentIndex, usedCents));
+            ledger.creditInCents -= cents;
+        }
+        journal.awaitDurable();
+        return true;
+    }
+
+    // runs the action under the guest's ledger monitor, so e.g. checking, charging and invoicing a stay is one step per guest
+    public <T> T inLedgerOf(GuestName guestName, Supplier<T> action){
+        Ledger ledger = ledgerOf(guestName);
+        synchronized (ledger) {
+            return action.get();
+        }
+    }
+
+    public long remainingCreditInCents(GuestName guestName){
+        Ledger ledger = ledgers.get(guestName);
+        return ledger == null ? 0 : ledger.creditInCents;
+    }
+
+    void useCredit(GuestName guestName, int paymentIndex, long cents){
+        Ledger ledger = ledgerOf(guestName);
+        synchronized (ledger) {
+            Payment payment = ledger.payments.get(paymentIndex);
+            payment.reduceCreditByCents(cents);
+            // the payment may have to move in the allocation order, which is rebuilt once on the next allocation
+            ledger.allocatorIsStale = true;
+            ledger.creditInCents -= cents;
+            journal.creditUsed(guestName, paymentIndex, cents);
+        }
+        journal.awaitDurable();
+    }
+
+    private Ledger ledgerOf(GuestName guestName){
+        return ledgers.computeIfAbsent(guestName.intern(), name -> new Ledger(allocationPolicy));
+    }
+
+    private static final class Ledger {
+        private List<Payment> payments = new ArrayList<>();
+        private final PaymentAllocator allocator;
+        private boolean allocatorIsStale;
+        // written under the ledger's monitor, read without it
+        private volatile long creditInCents;
+
+        private Ledger(AllocationPolicy allocationPolicy) {
+            this.allocator = new PaymentAllocator(allocationPolicy);
+        }
     }
 }
@@ -1,41 +1,148 @@
 package persistence;
 
-import java.time.LocalDate;
+import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class Room {
 
     private final RoomNumber roomNumber;
+    // the room keeps its own bookings until a RoomRepository stores it, from then on they are its rows
+    // in the repository's booking table; writers hold the room's monitor
     private final List<Booking> bookings;
+    private BookingTable table;
+    private BookingTable.RoomRows rows;
+    private OccupancyCalendar occupancy = new OccupancyCalendar(MemoryArena.HEAP);
+    // what a search of the RoomRepository returns when it finds the room, shared by all of them
+    private Optional<Room> asFound;
 
     public Room(RoomNumber roomNumber, List<Booking> bookings) {
         this.roomNumber = roomNumber;
-        this.bookings = bookings;
+        this.bookings = new CopyOnWriteArrayList<>(bookings);
+        this.bookings.forEach(booking -> occupancy.occupy(arrivalDay(booking), departureDay(booking)));
+    }
+
+    // a room whose calendar already holds the nights of its bookings
+    Room(RoomNumber roomNumber, List<Booking> bookings, OccupancyCalendar occupancy) {
+        this.roomNumber = roomNumber;
+        this.bookings = new CopyOnWriteArrayList<>(bookings);
+        this.occupancy = occupancy;
     }
 
     public RoomNumber getRoomNumber() {
         return roomNumber;
     }
 
+    // a stored room answers with views on its rows, read in one pass under its monitor
     public List<Booking> getBookings() {
-        return bookings;
+        synchronized (this) {
+            if (rows != null) {
+                return Collections.unmodifiableList(table.bookings(rows));
+            }
+        }
+        return Collections.unmodifiableList(bookings);
     }
 
-    private boolean dateIsFree(LocalDate date) {
-        for (Booking booking : bookings) {
-            if (booking.contains(date)) {
-                return false;
-            }
+    // bookings change through the RoomRepository, which keeps its indexes and journal in step
+    // a calendar that cannot take the nights throws before the booking is added
+    synchronized void addBooking(Booking booking) {
+        occupancy.occupy(arrivalDay(booking), departureDay(booking));
+        if (rows != null) {
+            table.add(rows, booking);
+        } else {
+            bookings.add(booking);
         }
-        return true;
     }
 
-    public boolean roomIsFree(ArrivalDate arrivalDate, DepartureDate departureDate) {
-        for (LocalDate date : arrivalDate.arrivalDate().datesUntil(departureDate.departureDate()).toList()) {
-            if (!dateIsFree(date)) {
-                return false;
+    synchronized boolean cancelBooking(Booking booking) {
+        if (rows != null ? !table.remove(rows, booking) : !bookings.remove(booking)) {
+            return false;
+        }
+        occupancy.release(arrivalDay(booking), departureDay(booking));
+        // bookings sharing nights, e.g. two loaded with the same arrival day, keep theirs
+        if (rows != null) {
+            table.forEachStay(rows, (arrivalDay, departureDay) -> {
+                if (arrivalDay < departureDay(booking) && arrivalDay(booking) < departureDay) {
+                    occupancy.occupy(arrivalDay, departureDay);
+                }
+            });
+        } else {
+            for (Booking other : bookings) {
+                if (arrivalDay(other) < departureDay(booking) && arrivalDay(booking) < departureDay(other)) {
+                    occupancy.occupy(arrivalDay(other), departureDay(other));
+                }
             }
         }
         return true;
     }
+
+    public synchronized boolean roomIsFree(ArrivalDate arrivalDate, DepartureDate departureDate) {
+        return isFree(arrivalDate.epochDay(), departureDate.epochDay());
+    }
+
+    // an Optional is immutable, so a race creates at most a second one that is equal to the first
+    Optional<Room> asFound() {
+        Optional<Room> found = asFound;
+        if (found == null) {
+            found = Optional.of(this);
+            asFound = found;
+        }
+        return found;
+    }
+
+    synchronized boolean isFree(long fromDay, long toDayExclusive) {
+        return occupancy.isFree(fromDay, toDayExclusive);
+    }
+
+    // moves the bookings into the given rows and returns them, called by the RoomRepository storing the room
+    synchronized List<Booking> storeIn(BookingTable table, BookingTable.RoomRows rows) {
+        List<Booking> stored = List.copyOf(bookings);
+        for (Booking booking : stored) {
+            table.add(rows, booking);
+        }
+        bookings.clear();
+        this.table = table;
+        this.rows = rows;
+        return stored;
+    }
+
+    // takes the bookings back from the table when the room is replaced, they keep their values
+    synchronized BookingTable.RoomRows release() {
+        BookingTable.RoomRows released = rows;
+        if (released != null) {
+            bookings.addAll(table.removeAll(released));
+            rows = null;
+            table = null;
+        }
+        return released;
+    }
+
+    // the slot's rows, null unless the room is stored
+    synchronized BookingTable.RoomRows rows() {
+        return rows;
+    }
+
+    // moves the calendar into the arena of the repository the room is saved in
+    synchronized void storeOccupancyIn(MemoryArena arena) {
+        if (occupancy.arena() != arena) {
+            occupancy = occupancy.copyTo(arena);
+        }
+    }
+
+    // moves the calendar into the given one, e.g. into a mapped file
+    synchronized void moveOccupancyTo(OccupancyCalendar calendar) {
+        if (calendar != occupancy) {
+            calendar.copyFrom(occupancy);
+            occupancy = calendar;
+        }
+    }
+
+    private static long arrivalDay(Booking booking) {
+        return booking.arrivalDay();
+    }
+
+    private static long departureDay(Booking booking) {
+        return booking.departureDay();
+    }
 }
@@ -0,0 +1,4 @@
+package persistence;
+
+public record RoomBooking(RoomNumber roomNumber, Booking booking) {
+}
@@ -0,0 +1,453 @@
+package persistence;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.zip.CRC32;
+
+// Rooms, their occupancy calendars and their bookings kept in place in a memory-mapped file.
+// Each room's calendar is a window of the mapping, so Room.roomIsFree reads the page cache directly
+// and opening the file loads no calendars. The repository reports its changes through the Journal
+// callbacks, which update the booking records in place.
+public class RoomCalendarFile implements Journal, Closeable {
+
+    private static final int MAGIC = 0x48524346;
+    private static final int VERSION = 1;
+
+    // written once when the file is created
+    private static final int LAYOUT = 0;
+    private static final int LAYOUT_CHECKSUM = LAYOUT + 32;
+    // two header slots written in turn, the valid one with the higher generation is the current header
+    private static final int[] HEADER_SLOTS = {64, 128};
+    private static final int HEADER_CHECKSUM = 24;
+    private static final int DATA = 256;
+
+    // a booking record: checksum, state, status, nights, arrival day, room slot, id and guest name references
+    private static final int RECORD_BYTES = 32;
+    private static final byte FREE = 0;
+    private static final byte LIVE = 1;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer file;
+    private final long firstWord;
+    private final int wordsPerRoom;
+    private final int roomCapacity;
+    private final int recordCapacity;
+    private final int stringCapacity;
+    private final int roomsOffset;
+    private final int recordsOffset;
+    private final int stringsOffset;
+
+    private long generation;
+    private int roomCount;
+    private int recordCount;
+    private int stringBytes;
+
+    private final Map<RoomNumber, Integer> roomSlots = new HashMap<>();
+    private final List<OccupancyCalendar> calendars = new ArrayList<>();
+    private final Map<BookingId, Integer> recordsById = new HashMap<>();
+    private final Map<GuestName, Integer> guestNameReferences = new HashMap<>();
+    private final Deque<Integer> freeRecords = new ArrayDeque<>();
+    // the id strings of free records that are known to belong to them, so the next booking of the record can take the place
+    private final Map<Integer, Integer> idReferencesOfFreeRecords = new HashMap<>();
+    private final int[] liveRecordsByRoom;
+    private final RoomRepository rooms;
+    private boolean loading;
+    private boolean closed;
+
+    private RoomCalendarFile(FileChannel channel, MappedByteBuffer file) throws IOException {
+        this.channel = channel;
+        this.file = file;
+        file.order(ByteOrder.LITTLE_ENDIAN);
+        if (file.capacity() < DATA || file.getInt(LAYOUT) != MAGIC) {
+            throw new IOException("Not a room calendar file");
+        }
+        if (file.getInt(LAYOUT + 4) != VERSION || file.getInt(LAYOUT_CHECKSUM) != checksum(LAYOUT, LAYOUT_CHECKSUM - LAYOUT)) {
+            throw new IOException("Unsupported or damaged room calendar file");
+        }
+        this.firstWord = file.getLong(LAYOUT + 8);
+        this.wordsPerRoom = file.getInt(LAYOUT + 16);
+        this.roomCapacity = file.getInt(LAYOUT + 20);
+        this.recordCapacity = file.getInt(LAYOUT + 24);
+        this.stringCapacity = file.getInt(LAYOUT + 28);
+        this.roomsOffset = DATA;
+        this.recordsOffset = roomsOffset + roomCapacity * roomEntryBytes(wordsPerRoom);
+        this.stringsOffset = recordsOffset + recordCapacity * RECORD_BYTES;
+        this.liveRecordsByRoom = new int[roomCapacity];
+        this.rooms = new RoomRepository(this);
+        load();
+    }
+
+    // A file for rooms with bookable nights from firstNight on. Capacities are fixed, the file is never resized.
+    public static RoomCalendarFile create(Path path, LocalDate firstNight, int nights, int roomCapacity, int bookingCapacity) throws IOException {
+        if (nights <= 0 || nights > Short.MAX_VALUE || roomCapacity <= 0 || bookingCapacity <= 0) {
+            throw new IllegalArgumentException("Nights, room and booking capacity must be positive, nights at most " + Short.MAX_VALUE);
+        }
+        long firstWord = Math.floorDiv(firstNight.toEpochDay(), 64);
+        int wordsPerRoom = (int) (Math.floorDiv(firstNight.toEpochDay() + nights - 1, 64) - firstWord + 1);
+        // room numbers and booking ids are short, guest names shared between bookings
+        long stringCapacity = 32L * roomCapacity + 64L * bookingCapacity;
+        long size = DATA + (long) roomCapacity * roomEntryBytes(wordsPerRoom) + (long) bookingCapacity * RECORD_BYTES + stringCapacity;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Room calendar file of " + size + " bytes cannot be mapped at once");
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer layout = ByteBuffer.allocate(LAYOUT_CHECKSUM + Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            layout.putInt(MAGIC).putInt(VERSION).putLong(firstWord).putInt(wordsPerRoom)
+                    .putInt(roomCapacity).putInt(bookingCapacity).putInt((int) stringCapacity);
+            CRC32 crc = new CRC32();
+            crc.update(layout.array(), 0, LAYOUT_CHECKSUM);
+            layout.putInt((int) crc.getValue());
+            channel.write(layout.flip(), LAYOUT);
+            // an empty header in the first slot, the file starts out clean
+            ByteBuffer header = ByteBuffer.allocate(HEADER_CHECKSUM + Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putLong(1).putInt(0).putInt(0).putInt(0).putInt(1);
+            crc.reset();
+            crc.update(header.array(), 0, HEADER_CHECKSUM);
+            header.putInt((int) crc.getValue());
+            channel.write(header.flip(), HEADER_SLOTS[1]);
+            channel.write(ByteBuffer.allocate(1), size - 1);
+        }
+        return open(path);
+    }
+
+    // the file stays locked until it is closed, a second process mapping it would corrupt it
+    public static RoomCalendarFile open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (tryLock(channel) == null) {
+                throw new IOException("Room calendar file " + path + " is in use");
+            }
+            return new RoomCalendarFile(channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size()));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static FileLock tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // locked by this process
+            return null;
+        }
+    }
+
+    public RoomRepository rooms() {
+        return rooms;
+    }
+
+    // writes the mapped pages back to the file
+    public synchronized void force() {
+        file.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        file.force();
+        writeHeader(true);
+        file.force();
+        channel.close();
+    }
+
+    // the calendar window of a room, the room gets a place in the file on first use
+    synchronized OccupancyCalendar calendarOf(RoomNumber roomNumber) {
+        Integer slot = roomSlots.get(roomNumber);
+        if (slot != null) {
+            return calendars.get(slot);
+        }
+        if (roomCount == roomCapacity) {
+            throw new IllegalStateException("Room calendar file is full, it holds " + roomCapacity + " rooms");
+        }
+        int numberReference = appendString(roomNumber.number());
+        file.putInt(roomEntry(roomCount), numberReference);
+        OccupancyCalendar calendar = window(roomCount);
+        calendars.add(calendar);
+        roomSlots.put(roomNumber, roomCount++);
+        writeHeader(false);
+        return calendar;
+    }
+
+    @Override
+    public synchronized void roomAdded(RoomNumber roomNumber) {
+        if (loading) {
+            return;
+        }
+        calendarOf(roomNumber);
+        // a room saved again replaces the bookings it had
+        int slot = roomSlots.get(roomNumber);
+        for (int record = 0; record < recordCount && liveRecordsByRoom[slot] > 0; record++) {
+            int offset = record(record);
+            if (file.get(offset + 4) == LIVE && file.getInt(offset + 12) == slot) {
+                recordsById.remove(new BookingId(readString(file.getInt(offset + 16))));
+                freeRecord(record);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void bookingAdded(RoomNumber roomNumber, Booking booking) {
+        if (loading) {
+            return;
+        }
+        int slot = roomSlots.get(roomNumber);
+        long nights = booking.departureDay() - booking.arrivalDay();
+        if (booking.arrivalDay() != (int) booking.arrivalDay() || nights != (short) nights) {
+            throw new IllegalArgumentException("Booking " + booking.getId().id() + " does not fit a room calendar record");
+        }
+        // everything is checked before the first change, a booking that does not fit leaves the file as it was
+        Integer reused = freeRecords.peek();
+        if (reused == null && recordCount == recordCapacity) {
+            throw new IllegalStateException("Room calendar file is full, it holds " + recordCapacity + " bookings");
+        }
+        // a reused record keeps its id's place in the string region if the new id fits
+        byte[] id = booking.getId().id().getBytes(StandardCharsets.UTF_8);
+        Integer ownIdReference = reused == null ? null : idReferencesOfFreeRecords.get(reused);
+        boolean idKeepsItsPlace = ownIdReference != null && stringLength(ownIdReference) >= id.length;
+        Integer guestReference = guestNameReferences.get(booking.getGuestName());
+        byte[] guestName = guestReference == null ? booking.getGuestName().guestName().getBytes(StandardCharsets.UTF_8) : null;
+        checkStringSpace(idKeepsItsPlace ? null : id, guestName);
+        int record = reused == null ? recordCount++ : freeRecords.poll();
+        int offset = record(record);
+        if (reused != null) {
+            idReferencesOfFreeRecords.remove(reused);
+        }
+        int idReference = idKeepsItsPlace ? putString(ownIdReference, id) : appendString(id);
+        if (guestReference == null) {
+            guestReference = appendString(guestName);
+            guestNameReferences.put(booking.getGuestName(), guestReference);
+        }
+        file.put(offset + 4, LIVE);
+        file.put(offset + 5, booking.status());
+        file.putShort(offset + 6, (short) nights);
+        file.putInt(offset + 8, (int) booking.arrivalDay());
+        file.putInt(offset + 12, slot);
+        file.putInt(offset + 16, idReference);
+        file.putInt(offset + 20, guestReference);
+        file.putInt(offset, checksum(offset + 4, RECORD_BYTES - 4));
+        recordsById.put(booking.getId(), record);
+        liveRecordsByRoom[slot]++;
+        writeHeader(false);
+    }
+
+    @Override
+    public synchronized void bookingCancelled(RoomNumber roomNumber, Booking booking) {
+        Integer record = loading ? null : recordsById.remove(booking.getId());
+        if (record != null) {
+            freeRecord(record);
+        }
+    }
+
+    @Override
+    public void checkedIn(RoomNumber roomNumber, Booking booking) {
+        updateStatus(booking);
+    }
+
+    @Override
+    public void invoiced(RoomNumber roomNumber, Booking booking) {
+        updateStatus(booking);
+    }
+
+    @Override
+    public void checkedOut(RoomNumber roomNumber, Booking booking) {
+        updateStatus(booking);
+    }
+
+    private synchronized void updateStatus(Booking booking) {
+        Integer record = recordsById.get(booking.getId());
+        if (loading || record == null) {
+            return;
+        }
+        int offset = record(record);
+        file.put(offset + 5, booking.status());
+        file.putInt(offset, checksum(offset + 4, RECORD_BYTES - 4));
+    }
+
+    // Picks the current header and builds the rooms over their calendar windows. Records that fail
+    // their checksum or point past the header's string region were torn by a crash and are dropped.
+    // Unless the file was closed cleanly the calendars are rebuilt from the remaining records.
+    private void load() throws IOException {
+        int slot = currentHeaderSlot();
+        generation = file.getLong(slot);
+        roomCount = file.getInt(slot + 8);
+        recordCount = file.getInt(slot + 12);
+        stringBytes = file.getInt(slot + 16);
+        boolean clean = file.getInt(slot + 20) == 1;
+
+        List<List<Booking>> bookingsBySlot = new ArrayList<>();
+        for (int room = 0; room < roomCount; room++) {
+            roomSlots.put(new RoomNumber(readString(file.getInt(roomEntry(room)))), room);
+            calendars.add(window(room));
+            bookingsBySlot.add(new ArrayList<>());
+            if (!clean) {
+                for (int word = 0; word < wordsPerRoom; word++) {
+                    file.putLong(roomEntry(room) + Long.BYTES + word * Long.BYTES, 0L);
+                }
+            }
+        }
+        for (int record = 0; record < recordCount; record++) {
+            int offset = record(record);
+            int room = file.getInt(offset + 12);
+            boolean intact = file.getInt(offset) == checksum(offset + 4, RECORD_BYTES - 4) && isString(file.getInt(offset + 16));
+            if (file.get(offset + 4) != LIVE || !intact || room < 0 || room >= roomCount || !isString(file.getInt(offset + 20))) {
+                // only a record freed with a valid checksum still points to its own id, a torn one may point anywhere
+                if (intact && file.get(offset + 4) == FREE) {
+                    idReferencesOfFreeRecords.put(record, file.getInt(offset + 16));
+                }
+                file.put(offset + 4, FREE);
+                freeRecords.add(record);
+                continue;
+            }
+            GuestName guestName = new GuestName(readString(file.getInt(offset + 20))).intern();
+            guestNameReferences.putIfAbsent(guestName, file.getInt(offset + 20));
+            long arrivalDay = file.getInt(offset + 8);
+            Booking booking = new Booking(new BookingId(readString(file.getInt(offset + 16))),
+                    new ArrivalDate(arrivalDay), new DepartureDate(arrivalDay + file.getShort(offset + 6)), guestName);
+            byte status = file.get(offset + 5);
+            booking.setCheckedIn((status & Booking.CHECKED_IN) != 0);
+            booking.setInvoiced((status & Booking.INVOICED) != 0);
+            booking.setCheckedOut((status & Booking.CHECKED_OUT) != 0);
+            if (!clean) {
+                calendars.get(room).occupy(booking.arrivalDay(), booking.departureDay());
+            }
+            recordsById.put(booking.getId(), record);
+            liveRecordsByRoom[room]++;
+            bookingsBySlot.get(room).add(booking);
+        }
+
+        List<Room> loadedRooms = new ArrayList<>(roomCount);
+        roomSlots.forEach((roomNumber, room) -> loadedRooms.add(new Room(roomNumber, bookingsBySlot.get(room), calendars.get(room))));
+        loadedRooms.sort(Comparator.comparingInt(room -> roomSlots.get(room.getRoomNumber())));
+        loading = true;
+        try {
+            rooms.saveAll(loadedRooms);
+        } finally {
+            loading = false;
+        }
+        // until close marks it clean again, a crash leaves the file marked as not cleanly closed
+        writeHeader(false);
+        file.force();
+    }
+
+    private int currentHeaderSlot() throws IOException {
+        int current = -1;
+        for (int slot : HEADER_SLOTS) {
+            if (file.getInt(slot + HEADER_CHECKSUM) == checksum(slot, HEADER_CHECKSUM)
+                    && (current < 0 || file.getLong(slot) > file.getLong(current))) {
+                current = slot;
+            }
+        }
+        if (current < 0) {
+            throw new IOException("Room calendar file has no valid header");
+        }
+        return current;
+    }
+
+    // the header goes to the slot not holding the current one, so a torn write leaves the previous header intact
+    private void writeHeader(boolean clean) {
+        generation++;
+        int slot = HEADER_SLOTS[(int) (generation % 2)];
+        file.putLong(slot, generation);
+        file.putInt(slot + 8, roomCount);
+        file.putInt(slot + 12, recordCount);
+        file.putInt(slot + 16, stringBytes);
+        file.putInt(slot + 20, clean ? 1 : 0);
+        file.putInt(slot + HEADER_CHECKSUM, checksum(slot, HEADER_CHECKSUM));
+    }
+
+    private void freeRecord(int record) {
+        int offset = record(record);
+        liveRecordsByRoom[file.getInt(offset + 12)]--;
+        file.put(offset + 4, FREE);
+        file.putInt(offset, checksum(offset + 4, RECORD_BYTES - 4));
+        freeRecords.push(record);
+        idReferencesOfFreeRecords.put(record, file.getInt(offset + 16));
+    }
+
+    private OccupancyCalendar window(int room) {
+        ByteBuffer words = file.slice(roomEntry(room) + Long.BYTES, wordsPerRoom * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        return new OccupancyCalendar(words.asLongBuffer(), firstWord);
+    }
+
+    private int roomEntry(int room) {
+        return roomsOffset + room * roomEntryBytes(wordsPerRoom);
+    }
+
+    private int record(int record) {
+        return recordsOffset + record * RECORD_BYTES;
+    }
+
+    // a room entry is the reference to its number followed by its calendar words
+    private static int roomEntryBytes(int wordsPerRoom) {
+        return Long.BYTES + wordsPerRoom * Long.BYTES;
+    }
+
+    private int appendString(String value) {
+        return appendString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // strings are stored as an unsigned short length followed by the UTF-8 bytes
+    private int appendString(byte[] bytes) {
+        if (bytes.length > 0xFFFF || stringBytes + Short.BYTES + bytes.length > stringCapacity) {
+            throw new IllegalStateException("Room calendar file is full, no room left for strings");
+        }
+        int reference = putString(stringBytes, bytes);
+        stringBytes += Short.BYTES + bytes.length;
+        return reference;
+    }
+
+    // strings that are to be appended, null for one that is not
+    private void checkStringSpace(byte[] first, byte[] second) {
+        if (stringBytes + stringSpace(first) + stringSpace(second) > stringCapacity) {
+            throw new IllegalStateException("Room calendar file is full, no room left for strings");
+        }
+    }
+
+    private static long stringSpace(byte[] bytes) {
+        if (bytes != null && bytes.length > 0xFFFF) {
+            throw new IllegalStateException("Room calendar file cannot hold a string of " + bytes.length + " bytes");
+        }
+        return bytes == null ? 0 : Short.BYTES + bytes.length;
+    }
+
+    private int putString(int reference, byte[] bytes) {
+        file.putShort(stringsOffset + reference, (short) bytes.length);
+        file.put(stringsOffset + reference + Short.BYTES, bytes);
+        return reference;
+    }
+
+    private int stringLength(int reference) {
+        return Short.toUnsignedInt(file.getShort(stringsOffset + reference));
+    }
+
+    private boolean isString(int reference) {
+        return reference >= 0 && reference + Short.BYTES <= stringBytes && reference + Short.BYTES + stringLength(reference) <= stringBytes;
+    }
+
+    private String readString(int reference) {
+        byte[] bytes = new byte[stringLength(reference)];
+        file.get(stringsOffset + reference + Short.BYTES, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int checksum(int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(file.slice(offset, length));
+        return (int) crc.getValue();
+    }
+}
@@ -2,61 +2,310 @@ package persistence;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+import java.util.function.IntFunction;
 
 public class RoomRepository {
 
     private final Map<RoomNumber, Room> rooms = new ConcurrentHashMap<>();
+    private final List<Room> roomsBySlot = new CopyOnWriteArrayList<>();
+    private final Map<RoomNumber, Integer> slotsByRoomNumber = new ConcurrentHashMap<>();
+    // the memory of the booking table, its indexes and the room calendars, off the heap if the storage says so
+    private final MemoryArena arena;
+    // null unless the calendars of the rooms live in a mapped file
+    private final RoomCalendarFile calendarFile;
+    // the bookings of all rooms, with the guest and arrival day indexes
+    private final BookingTable table;
+    // the slots of the rooms occupied in each night, a hint for the search of a free room
+    private final AvailabilityIndex availability;
+    private final IntFunction<RoomNumber> roomNumbers = slot -> roomsBySlot.get(slot).getRoomNumber();
+    private final Journal journal;
+
+    public RoomRepository() {
+        this(Journal.NONE);
+    }
+
+    public RoomRepository(Journal journal) {
+        this(journal, BookingStorage.HEAP);
+    }
+
+    public RoomRepository(Journal journal, BookingStorage storage) {
+        this(journal, storage, null);
+    }
+
+    RoomRepository(RoomCalendarFile calendarFile) {
+        this(calendarFile, BookingStorage.HEAP, calendarFile);
+    }
+
+    private RoomRepository(Journal journal, BookingStorage storage, RoomCalendarFile calendarFile) {
+        this.journal = journal;
+        this.arena = MemoryArena.of(storage);
+        this.calendarFile = calendarFile;
+        this.table = new BookingTable(arena);
+        this.availability = new AvailabilityIndex(arena);
+    }
 
     public void save(Room room) {
-        rooms.put(room.getRoomNumber(), room);
+        Room previous = rooms.put(room.getRoomNumber(), room);
+        if (previous == room) {
+            return;
+        }
+        synchronized (this) {
+            Integer slot = slotsByRoomNumber.get(room.getRoomNumber());
+            BookingTable.RoomRows replaced = null;
+            if (slot == null) {
+                slot = roomsBySlot.size();
+                roomsBySlot.add(room);
+                slotsByRoomNumber.put(room.getRoomNumber(), slot);
+            } else {
+                roomsBySlot.set(slot, room);
+                // only the nights of the replaced room's bookings can be marked for its slot
+                for (Booking booking : previous.getBookings()) {
+                    markNights(slot, booking, false);
+                }
+                replaced = previous.release();
+            }
+            for (Booking booking : room.getBookings()) {
+                leaveOtherRoom(room.getRoomNumber(), booking);
+            }
+            synchronized (room) {
+                placeOccupancy(room);
+                journal.roomAdded(room.getRoomNumber());
+                for (Booking booking : room.storeIn(table, table.roomRows(slot, replaced))) {
+                    markNights(slot, booking, true);
+                    journal.bookingAdded(room.getRoomNumber(), booking);
+                }
+            }
+        }
+        journal.awaitDurable();
+    }
+
+    // bulk variant of save for loading many rooms, the slots of all of them are published at once
+    public void saveAll(Collection<Room> roomsToSave) {
+        List<Room> newRooms = new ArrayList<>();
+        synchronized (this) {
+            for (Room room : roomsToSave) {
+                if (rooms.containsKey(room.getRoomNumber())) {
+                    save(room);
+                    continue;
+                }
+                int slot = roomsBySlot.size() + newRooms.size();
+                newRooms.add(room);
+                slotsByRoomNumber.put(room.getRoomNumber(), slot);
+                synchronized (room) {
+                    placeOccupancy(room);
+                    journal.roomAdded(room.getRoomNumber());
+                    for (Booking booking : room.storeIn(table, table.roomRows(slot, null))) {
+                        markNights(slot, booking, true);
+                        journal.bookingAdded(room.getRoomNumber(), booking);
+                    }
+                }
+            }
+            roomsBySlot.addAll(newRooms);
+            newRooms.forEach(room -> rooms.put(room.getRoomNumber(), room));
+        }
+        journal.awaitDurable();
     }
 
     public Map<RoomNumber, Room> getRooms() {
-        return rooms;
+        return Collections.unmodifiableMap(rooms);
     }
 
-    public List<Room> findAllRoomsWithBookingsByGuestName(GuestName guestName) {
-        Set<Room> rooms = new HashSet<>();
-        for (Room room : this.rooms.values()) {
-            for (Booking booking : room.getBookings()) {
-                if (Objects.equals(booking.getGuestName(), guestName)) {
-                    rooms.add(room);
+    public Optional<Room> findFreeRoom(ArrivalDate arrivalDate, DepartureDate departureDate) {
+        Room room = freeRoom(arrivalDate.epochDay(), departureDate.epochDay(), null);
+        return room == null ? Optional.empty() : room.asFound();
+    }
+
+    // the booking is journaled under the room's lock and its flush awaited after releasing it,
+    // so the room stays available to other callers while the journal is forced
+    public Optional<Room> bookFreeRoom(Booking booking) {
+        Room room = freeRoom(booking.arrivalDay(), booking.departureDay(), booking);
+        if (room == null) {
+            return Optional.empty();
+        }
+        journal.awaitDurable();
+        return room.asFound();
+    }
+
+    // The first room free in the stay, booked for the booking unless it is null. The availability index
+    // is only a hint, the room's own calendar decides under the room's lock.
+    private Room freeRoom(long arrivalDay, long departureDay, Booking booking) {
+        int slots = roomsBySlot.size();
+        for (int word = 0; word * AvailabilityIndex.SLOTS_PER_WORD < slots; word++) {
+            long free = ~availability.occupied(word, arrivalDay, departureDay);
+            for (; free != 0; free &= free - 1) {
+                int slot = word * AvailabilityIndex.SLOTS_PER_WORD + Long.numberOfTrailingZeros(free);
+                if (slot >= slots) {
+                    break;
+                }
+                Room room = roomsBySlot.get(slot);
+                synchronized (room) {
+                    if (room.isFree(arrivalDay, departureDay)) {
+                        if (booking != null) {
+                            add(slot, room, booking);
+                        }
+                        return room;
+                    }
                 }
             }
         }
-        return rooms.stream().toList();
+        return null;
     }
 
-    public List<Booking> findAllBookingsByGuestName(GuestName guestName) {
-        List<Booking> bookings = new ArrayList<>();
-        for (Room room : rooms.values()) {
-            for (Booking booking : room.getBookings()) {
-                if (Objects.equals(booking.getGuestName(), guestName)) {
-                    bookings.add(booking);
+    public void addBooking(Room room, Booking booking) {
+        leaveOtherRoom(room.getRoomNumber(), booking);
+        synchronized (room) {
+            add(slotsByRoomNumber.get(room.getRoomNumber()), room, booking);
+        }
+        journal.awaitDurable();
+    }
+
+    // A journal that refuses the booking, e.g. a full room calendar file, leaves the room and the
+    // indexes as they were. The caller holds the room's lock.
+    private void add(int slot, Room room, Booking booking) {
+        room.addBooking(booking);
+        markNights(slot, booking, true);
+        try {
+            journal.bookingAdded(room.getRoomNumber(), booking);
+        } catch (RuntimeException e) {
+            room.cancelBooking(booking);
+            markNights(slot, booking, false);
+            throw e;
+        }
+    }
+
+    // a booking moved here from another room of this repository is cancelled there first
+    private void leaveOtherRoom(RoomNumber roomNumber, Booking booking) {
+        findBooking(booking.getId())
+                .filter(roomBooking -> !roomBooking.roomNumber().equals(roomNumber))
+                .ifPresent(roomBooking -> cancelBooking(rooms.get(roomBooking.roomNumber()), booking));
+    }
+
+    public boolean cancelBooking(Room room, Booking booking) {
+        synchronized (room) {
+            if (!room.cancelBooking(booking)) {
+                return false;
+            }
+            markNights(slotsByRoomNumber.get(room.getRoomNumber()), booking, false);
+            journal.bookingCancelled(room.getRoomNumber(), booking);
+        }
+        journal.awaitDurable();
+        return true;
+    }
+
+    private void placeOccupancy(Room room) {
+        if (calendarFile != null) {
+            room.moveOccupancyTo(calendarFile.calendarOf(room.getRoomNumber()));
+        } else {
+            room.storeOccupancyIn(arena);
+        }
+    }
+
+    private void markNights(int slot, Booking booking, boolean occupied) {
+        availability.mark(slot, booking.arrivalDay(), booking.departureDay(), occupied);
+    }
+
+    // The booking is looked up by the row of its id and read under the lock of the room holding the row.
+    // A row that changed its room meanwhile is looked up again.
+    public Optional<RoomBooking> findBooking(BookingId bookingId) {
+        int row = table.rowOf(bookingId);
+        while (row != BookingTable.NONE) {
+            Room room = roomsBySlot.get(table.slotOf(row));
+            synchronized (room) {
+                BookingTable.RoomRows rows = room.rows();
+                if (rows != null && table.holds(rows, row, bookingId)) {
+                    return Optional.of(new RoomBooking(room.getRoomNumber(), table.view(row)));
                 }
             }
+            int rowNow = table.rowOf(bookingId);
+            if (rowNow == row) {
+                return Optional.empty();
+            }
+            row = rowNow;
+        }
+        return Optional.empty();
+    }
+
+    public List<RoomBooking> findAllRoomBookingsByGuestName(GuestName guestName) {
+        return Collections.unmodifiableList(table.roomBookingsOf(guestName, roomNumbers));
+    }
+
+    public boolean hasBookings(GuestName guestName) {
+        return table.hasBookings(guestName);
+    }
+
+    // the expected arrivals of a day, in the order the bookings were made
+    public List<RoomBooking> findAllArrivals(ArrivalDate arrivalDate) {
+        return Collections.unmodifiableList(table.arrivals(arrivalDate.epochDay(), null, roomNumbers));
+    }
+
+    // walks the shorter of the day's arrivals and the guest's bookings
+    public List<RoomBooking> findAllArrivalsByGuestName(GuestName guestName, ArrivalDate arrivalDate) {
+        return Collections.unmodifiableList(table.arrivals(arrivalDate.epochDay(), guestName, roomNumbers));
+    }
+
+    public List<Room> findAllRoomsWithBookingsByGuestName(GuestName guestName) {
+        Set<RoomNumber> roomNumbers = new LinkedHashSet<>();
+        for (RoomBooking roomBooking : findAllRoomBookingsByGuestName(guestName)) {
+            roomNumbers.add(roomBooking.roomNumber());
+        }
+        return roomNumbers.stream().map(rooms::get).toList();
+    }
+
+    public List<Booking> findAllBookingsByGuestName(GuestName guestName) {
+        List<Booking> bookings = new ArrayList<>();
+        for (RoomBooking roomBooking : findAllRoomBookingsByGuestName(guestName)) {
+            bookings.add(roomBooking.booking());
         }
         return bookings;
     }
 
+    public void markBookingAsCheckedIn(RoomNumber roomNumber, Booking booking) {
+        markBooking(roomNumber, booking, Booking::setCheckedIn, journal::checkedIn);
+        journal.awaitDurable();
+    }
+
+    public void markBookingAsCheckedOut(RoomNumber roomNumber, Booking booking) {
+        markBooking(roomNumber, booking, Booking::setCheckedOut, journal::checkedOut);
+        journal.awaitDurable();
+    }
+
     public void markBookingsAsInvoiced(Map<RoomNumber, List<Booking>> bookingsForRooms) {
         bookingsForRooms.forEach((roomNumber, bookingsForRoom) -> {
             Room room = rooms.get(roomNumber);
-            room.getBookings().forEach(booking -> {
-                if (listContainsBooking(bookingsForRoom, booking)) {
-                    booking.setInvoiced(true);
+            if (room != null) {
+                for (Booking invoicedBooking : bookingsForRoom) {
+                    markBooking(room, invoicedBooking, Booking::setInvoiced, journal::invoiced);
                 }
-            });
-            save(room);
+            }
         });
+        journal.awaitDurable();
+    }
+
+    // Status changes take the room's lock like cancelling does, and only a booking the room still holds is
+    // journaled, so the journal never has a status change after the cancellation of its booking, which
+    // replay could not apply. The status of a booking that is not stored is changed without a record.
+    private void markBooking(RoomNumber roomNumber, Booking booking, BiConsumer<Booking, Boolean> change, BiConsumer<RoomNumber, Booking> record) {
+        Room room = rooms.get(roomNumber);
+        if (room == null) {
+            change.accept(booking, true);
+            return;
+        }
+        markBooking(room, booking, change, record);
     }
 
-    private boolean listContainsBooking(List<Booking> bookings, Booking booking) {
-        for (Booking aBooking : bookings) {
-            if (aBooking.getGuestName().equals(booking.getGuestName()) && aBooking.getArrivalDate().equals(booking.getArrivalDate())) {
-                return true;
+    private void markBooking(Room room, Booking booking, BiConsumer<Booking, Boolean> change, BiConsumer<RoomNumber, Booking> record) {
+        synchronized (room) {
+            change.accept(booking, true);
+            BookingTable.RoomRows rows = room.rows();
+            int row = rows == null ? BookingTable.NONE : table.rowIn(rows, booking);
+            if (row != BookingTable.NONE) {
+                // the given booking may be a copy of the stored one, e.g. from an invoice
+                Booking stored = table.view(row);
+                change.accept(stored, true);
+                record.accept(room.getRoomNumber(), stored);
             }
         }
-        return false;
     }
 }
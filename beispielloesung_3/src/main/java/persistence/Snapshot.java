@@ -0,0 +1,198 @@
+package persistence;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+class Snapshot {
+
+    private static final int MAGIC = 0x484f544c;
+
+    private static final int CHECKED_IN_FLAG = 1;
+    private static final int INVOICED_FLAG = 2;
+    private static final int CHECKED_OUT_FLAG = 4;
+
+    // Writes the repositories as they are after journalOffset bytes of the journal.
+    // The file is written next to its target and moved into place once it is complete.
+    static void write(Path file, long journalOffset, RoomRepository rooms, PaymentRepository payments, InvoiceRepository invoices) throws IOException {
+        Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(Channels.newOutputStream(channel), crc)));
+            out.writeInt(MAGIC);
+            out.writeLong(journalOffset);
+
+            Map<GuestName, Integer> guestIndexes = new LinkedHashMap<>();
+            rooms.getRooms().values().forEach(room -> room.getBookings().forEach(booking -> guestIndexes.putIfAbsent(booking.getGuestName(), guestIndexes.size())));
+            payments.findAllGuestNames().forEach(guestName -> guestIndexes.putIfAbsent(guestName, guestIndexes.size()));
+            List<Invoice> allInvoices = invoices.loadAll();
+            allInvoices.forEach(invoice -> {
+                guestIndexes.putIfAbsent(invoice.guestName(), guestIndexes.size());
+                invoice.bookingsForRooms().values().forEach(bookings -> bookings.forEach(booking -> guestIndexes.putIfAbsent(booking.getGuestName(), guestIndexes.size())));
+            });
+            out.writeInt(guestIndexes.size());
+            for (GuestName guestName : guestIndexes.keySet()) {
+                writeString(out, guestName.guestName());
+            }
+
+            out.writeInt(rooms.getRooms().size());
+            for (Room room : rooms.getRooms().values()) {
+                List<Booking> bookings = room.getBookings();
+                writeString(out, room.getRoomNumber().number());
+                out.writeInt(bookings.size());
+                for (Booking booking : bookings) {
+                    writeBooking(out, booking, guestIndexes);
+                }
+            }
+
+            List<GuestName> payingGuests = payments.findAllGuestNames();
+            out.writeInt(payingGuests.size());
+            for (GuestName guestName : payingGuests) {
+                List<Payment> guestPayments = payments.load(guestName);
+                out.writeInt(guestIndexes.get(guestName));
+                out.writeInt(guestPayments.size());
+                for (Payment payment : guestPayments) {
+                    out.writeLong(payment.getPaymentDate().paymentDate().toEpochDay());
+                    out.writeLong(payment.getPaidAmount().cents());
+                    out.writeLong(payment.getUsedAmount().cents());
+                }
+            }
+
+            out.writeInt(allInvoices.size());
+            for (Invoice invoice : allInvoices) {
+                writeString(out, invoice.id().id());
+                out.writeInt(guestIndexes.get(invoice.guestName()));
+                out.writeLong(invoice.totalAmount().cents());
+                out.writeInt(invoice.bookingsForRooms().size());
+                for (Map.Entry<RoomNumber, List<Booking>> bookingsForRoom : invoice.bookingsForRooms().entrySet()) {
+                    writeString(out, bookingsForRoom.getKey().number());
+                    out.writeInt(bookingsForRoom.getValue().size());
+                    // the booking may have been cancelled or its room replaced since, so the invoice keeps all of it
+                    for (Booking booking : bookingsForRoom.getValue()) {
+                        writeBooking(out, booking, guestIndexes);
+                    }
+                }
+            }
+            out.flush();
+            new DataOutputStream(Channels.newOutputStream(channel)).writeLong(crc.getValue());
+            channel.force(true);
+        }
+        Files.move(temporaryFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // Loads the snapshot into the given empty repositories and returns the journal offset
+    // it corresponds to, 0 if there is no snapshot yet.
+    static long read(Path file, RoomRepository rooms, PaymentRepository payments, InvoiceRepository invoices) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file));
+        CRC32 crc = new CRC32();
+        crc.update(in.slice(0, in.limit() - Long.BYTES));
+        if (in.getLong(in.limit() - Long.BYTES) != crc.getValue() || in.getInt() != MAGIC) {
+            throw new IllegalStateException("Snapshot is corrupt: " + file);
+        }
+        long journalOffset = in.getLong();
+
+        GuestName[] guestNames = new GuestName[in.getInt()];
+        for (int i = 0; i < guestNames.length; i++) {
+            guestNames[i] = new GuestName(readString(in)).intern();
+        }
+
+        int roomCount = in.getInt();
+        List<Room> loadedRooms = new ArrayList<>(roomCount);
+        for (int i = 0; i < roomCount; i++) {
+            RoomNumber roomNumber = new RoomNumber(readString(in));
+            int bookingCount = in.getInt();
+            List<Booking> bookings = new ArrayList<>(bookingCount);
+            for (int j = 0; j < bookingCount; j++) {
+                bookings.add(readBooking(in, guestNames));
+            }
+            loadedRooms.add(new Room(roomNumber, bookings));
+        }
+        rooms.saveAll(loadedRooms);
+
+        int payingGuestCount = in.getInt();
+        for (int i = 0; i < payingGuestCount; i++) {
+            GuestName guestName = guestNames[in.getInt()];
+            int paymentCount = in.getInt();
+            List<Payment> guestPayments = new ArrayList<>(paymentCount);
+            for (int j = 0; j < paymentCount; j++) {
+                PaymentDate paymentDate = new PaymentDate(LocalDate.ofEpochDay(in.getLong()));
+                Amount paidAmount = Amount.ofCents(in.getLong());
+                guestPayments.add(new Payment(guestName, paidAmount, paymentDate, in.getLong()));
+            }
+            payments.save(guestName, guestPayments);
+        }
+
+        int invoiceCount = in.getInt();
+        for (int i = 0; i < invoiceCount; i++) {
+            InvoiceId id = new InvoiceId(readString(in));
+            GuestName guestName = guestNames[in.getInt()];
+            Amount totalAmount = Amount.ofCents(in.getLong());
+            int invoicedRoomCount = in.getInt();
+            Map<RoomNumber, List<Booking>> bookingsForRooms = new HashMap<>();
+            for (int j = 0; j < invoicedRoomCount; j++) {
+                RoomNumber roomNumber = new RoomNumber(readString(in));
+                int bookingCount = in.getInt();
+                List<Booking> bookings = new ArrayList<>(bookingCount);
+                for (int k = 0; k < bookingCount; k++) {
+                    // a booking still in its room is shared with the invoice, a cancelled one is restored from the invoice
+                    Booking invoicedBooking = readBooking(in, guestNames);
+                    bookings.add(rooms.findBooking(invoicedBooking.getId())
+                            .filter(roomBooking -> roomBooking.roomNumber().equals(roomNumber))
+                            .map(RoomBooking::booking)
+                            .orElse(invoicedBooking));
+                }
+                bookingsForRooms.put(roomNumber, bookings);
+            }
+            invoices.save(new Invoice(id, guestName, bookingsForRooms, totalAmount));
+        }
+        return journalOffset;
+    }
+
+    private static void writeBooking(DataOutputStream out, Booking booking, Map<GuestName, Integer> guestIndexes) throws IOException {
+        writeString(out, booking.getId().id());
+        long arrivalDay = booking.arrivalDay();
+        out.writeLong(arrivalDay);
+        out.writeInt((int) (booking.departureDay() - arrivalDay));
+        out.writeInt(guestIndexes.get(booking.getGuestName()));
+        out.writeByte((booking.isCheckedIn() ? CHECKED_IN_FLAG : 0)
+                | (booking.isInvoiced() ? INVOICED_FLAG : 0)
+                | (booking.isCheckedOut() ? CHECKED_OUT_FLAG : 0));
+    }
+
+    private static Booking readBooking(ByteBuffer in, GuestName[] guestNames) {
+        BookingId bookingId = new BookingId(readString(in));
+        long arrivalDay = in.getLong();
+        Booking booking = new Booking(bookingId, new ArrivalDate(arrivalDay), new DepartureDate(arrivalDay + in.getInt()), guestNames[in.getInt()]);
+        int flags = in.get();
+        booking.setCheckedIn((flags & CHECKED_IN_FLAG) != 0);
+        booking.setInvoiced((flags & INVOICED_FLAG) != 0);
+        booking.setCheckedOut((flags & CHECKED_OUT_FLAG) != 0);
+        return booking;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        String value = new String(in.array(), in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+}
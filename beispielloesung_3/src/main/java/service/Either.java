@@ -8,6 +8,9 @@ public abstract class Either<T, U> {
 
     public static <T, U> Either<T, U> ofError(T error) { return new Left<>(error); }
     public static <T, U> Either<T, U> ofResult(U result) { return new Right<>(result); }
+
+    @SuppressWarnings("unchecked")
+    public static <U> Either<Error, U> ofError(ErrorCode code) { return (Either<Error, U>) code.failure(); }
 }
 
 class Right<U> extends Either {
@@ -1,4 +1,59 @@
 package service;
 
-public record Error(String errorMessage) {
+import java.util.Objects;
+
+public final class Error {
+
+    private static final Object[] NO_ARGUMENTS = new Object[0];
+
+    private final ErrorCode code;
+    private final Object[] arguments;
+    // the message of an error created without a code, null otherwise
+    private final String message;
+
+    // an error with a message of its own, as callers created errors before there were codes
+    public Error(String errorMessage) {
+        this.code = null;
+        this.arguments = NO_ARGUMENTS;
+        this.message = errorMessage;
+    }
+
+    public Error(ErrorCode code) {
+        this(code, NO_ARGUMENTS);
+    }
+
+    public Error(ErrorCode code, Object... arguments) {
+        this.code = code;
+        this.arguments = arguments;
+        this.message = null;
+    }
+
+    // null for an error created with a message of its own
+    public ErrorCode code() {
+        return code;
+    }
+
+    // rendered on demand, callers that only check the code never pay for the formatting
+    public String errorMessage() {
+        if (code == null) {
+            return message;
+        }
+        return arguments.length == 0 ? code.messageFormat() : String.format(code.messageFormat(), arguments);
+    }
+
+    // equal by message like the record Error was, so a coded error equals one created with its message
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Error other && Objects.equals(errorMessage(), other.errorMessage());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(errorMessage());
+    }
+
+    @Override
+    public String toString() {
+        return "Error[errorMessage=" + errorMessage() + "]";
+    }
 }
@@ -0,0 +1,34 @@
+package service;
+
+public enum ErrorCode {
+
+    ARRIVAL_DATE_MISSING("Arrival date must be provided"),
+    DEPARTURE_DATE_MISSING("Departure date must be provided"),
+    GUEST_NAME_MISSING("Guest name must be provided"),
+    BOOKING_REQUEST_MISSING("Booking request must be provided on booking!"),
+    NO_AVAILABLE_ROOM("No available room found for the desired dates"),
+    NO_ROOMS_AVAILABLE("No rooms available on the given date(s)"),
+    GUEST_HAS_NO_BOOKING("Guest cannot check in because they did not book a room"),
+    NO_BOOKING_TO_CHECK_OUT("No booking to be checked out!"),
+    MORE_THAN_ONE_BOOKING("More than one booking found!"),
+    BOOKING_NOT_INVOICED("Checkout only possible for invoiced bookings."),
+    NO_BOOKINGS_TO_INVOICE("No bookings to be invoiced for given customer '%s', departureDate [%s] and roomNumbers %s"),
+    PAYMENT_INSUFFICIENT("Payment insufficient. Necessary payment: %s");
+
+    private final String messageFormat;
+    // shared by every failure of this code that has no arguments
+    private final Either<Error, ?> failure;
+
+    ErrorCode(String messageFormat) {
+        this.messageFormat = messageFormat;
+        this.failure = Either.ofError(new Error(this));
+    }
+
+    String messageFormat() {
+        return messageFormat;
+    }
+
+    Either<Error, ?> failure() {
+        return failure;
+    }
+}
@@ -4,76 +4,102 @@ import persistence.*;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class HotelService {
 
+    private static final Amount PRICE_PER_NIGHT = new Amount(100.0);
+    // results are immutable, so the offers for stays of up to a month are created once
+    private static final List<Either<Error, Amount>> OFFERS_BY_NIGHTS = offers(31);
+
     private final RoomRepository rooms;
+    // one result per room serves every successful booking of it
+    private final Map<RoomNumber, Either<Error, RoomNumber>> bookedRoomResults = new ConcurrentHashMap<>();
 
     public HotelService(RoomRepository rooms) {
         this.rooms = rooms;
     }
 
     public Either<Error, Amount> requestRoom(ArrivalDate arrivalDate, DepartureDate departureDate) {
-        for (Room room : rooms.getRooms().values()) {
-            if (room.roomIsFree(arrivalDate, departureDate)) {
-                return Either.ofResult(new Amount(100.0 * arrivalDate.daysUntil(departureDate.departureDate())));
-            }
+        if (rooms.findFreeRoom(arrivalDate, departureDate).isPresent()) {
+            long nights = arrivalDate.daysUntil(departureDate);
+            return nights < OFFERS_BY_NIGHTS.size() ? OFFERS_BY_NIGHTS.get((int) nights) : Either.ofResult(PRICE_PER_NIGHT.times(nights));
+        }
+        return Either.ofError(ErrorCode.NO_AVAILABLE_ROOM);
+    }
+
+    private static List<Either<Error, Amount>> offers(int maxNights) {
+        List<Either<Error, Amount>> offers = new ArrayList<>();
+        for (int nights = 0; nights <= maxNights; nights++) {
+            offers.add(Either.ofResult(PRICE_PER_NIGHT.times(nights)));
         }
-        return Either.ofError(new Error("No available room found for the desired dates"));
+        return List.copyOf(offers);
     }
 
     public Either<Error, RoomNumber> bookRoom(BookingRequest bookingRequest) {
         if(bookingRequest == null){
-            return Either.ofError(new Error("Booking request must be provided on booking!"));
+            return Either.ofError(ErrorCode.BOOKING_REQUEST_MISSING);
         }
-        for (Room room : rooms.getRooms().values()) {
-            if (room.roomIsFree(bookingRequest.arrivalDate(), bookingRequest.departureDate())) {
-                room.getBookings().add(new Booking(bookingRequest));
-                rooms.save(room); // not needed here, but generally required for persistence
-                return Either.ofResult(room.getRoomNumber());
-            }
+        Optional<Room> bookedRoom = rooms.bookFreeRoom(new Booking(bookingRequest));
+        if (bookedRoom.isPresent()) {
+            Room room = bookedRoom.get();
+            rooms.save(room); // not needed here, but generally required for persistence
+            return bookedRoomResults.computeIfAbsent(room.getRoomNumber(), Either::ofResult);
         }
-        return Either.ofError(new Error("No rooms available on the given date(s)"));
+        return Either.ofError(ErrorCode.NO_ROOMS_AVAILABLE);
     }
 
     public Either<Error, List<RoomNumber>> checkIn(GuestName guestName, ArrivalDate arrivalDate) {
-        List<Room> roomsForGuest = rooms.findAllRoomsWithBookingsByGuestName(guestName);
-        if (roomsForGuest.size() == 0) {
-            return Either.ofError(new Error("Guest cannot check in because they did not book a room"));
+        if (guestName == null) {
+            return Either.ofError(ErrorCode.GUEST_HAS_NO_BOOKING);
+        }
+        // stored guest names are canonical, comparing them with the canonical instance ends at the reference check
+        GuestName canonicalGuestName = guestName.intern();
+        // only the day's arrivals are looked at
+        List<RoomBooking> arrivalsOfGuest = rooms.findAllArrivalsByGuestName(canonicalGuestName, arrivalDate);
+        if (arrivalsOfGuest.isEmpty() && !rooms.hasBookings(canonicalGuestName)) {
+            return Either.ofError(ErrorCode.GUEST_HAS_NO_BOOKING);
         }
         List<RoomNumber> bookedRoomNumbers = new ArrayList<>();
-        roomsForGuest.forEach(room -> {
-            List<Booking> currentBookings = room.getBookings().stream()
-                    .filter(booking -> booking.getGuestName().equals(guestName))
-                    .filter(booking -> booking.getArrivalDate().equals(arrivalDate))
-                    .toList();
-            if (currentBookings.size() > 0) {
-                currentBookings.forEach(booking -> booking.setCheckedIn(true));
-                bookedRoomNumbers.add(room.getRoomNumber());
-                rooms.save(room);
+        arrivalsOfGuest.forEach(roomBooking -> {
+            rooms.markBookingAsCheckedIn(roomBooking.roomNumber(), roomBooking.booking());
+            if (!bookedRoomNumbers.contains(roomBooking.roomNumber())) {
+                bookedRoomNumbers.add(roomBooking.roomNumber());
             }
         });
         return Either.ofResult(bookedRoomNumbers);
     }
 
+    // the bookings arriving on a day that have not checked in yet
+    public List<RoomBooking> expectedArrivals(ArrivalDate arrivalDate) {
+        return rooms.findAllArrivals(arrivalDate).stream()
+                .filter(roomBooking -> !roomBooking.booking().isCheckedIn())
+                .toList();
+    }
+
     public Either<Error, Booking> checkOut(GuestName guestName, RoomNumber roomNumber, DepartureDate departureDate) {
+        if (guestName == null) {
+            return Either.ofError(ErrorCode.NO_BOOKING_TO_CHECK_OUT);
+        }
         Room room = rooms.getRooms().get(roomNumber);
+        GuestName canonicalGuestName = guestName.intern();
         List<Booking> bookingsToCheckOut = room.getBookings().stream()
-                .filter(booking -> Objects.equals(booking.getGuestName(), guestName))
+                .filter(booking -> Objects.equals(booking.getGuestName(), canonicalGuestName))
                 .filter(booking -> booking.getDepartureDate().equals(departureDate)).toList();
         if(bookingsToCheckOut.size() == 0){
-            return Either.ofError(new Error("No booking to be checked out!"));
+            return Either.ofError(ErrorCode.NO_BOOKING_TO_CHECK_OUT);
         }
         if(bookingsToCheckOut.size() > 1){
-            return Either.ofError(new Error("More than one booking found!"));
+            return Either.ofError(ErrorCode.MORE_THAN_ONE_BOOKING);
         }
         Booking booking = bookingsToCheckOut.getFirst();
         if(!booking.isInvoiced()){
-            return Either.ofError(new Error("Checkout only possible for invoiced bookings."));
+            return Either.ofError(ErrorCode.BOOKING_NOT_INVOICED);
         }
-        booking.setCheckedOut(true);
-        rooms.save(room);
+        rooms.markBookingAsCheckedOut(roomNumber, booking);
         return Either.ofResult(booking);
     }
 }
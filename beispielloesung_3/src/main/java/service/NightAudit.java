@@ -0,0 +1,10 @@
+package service;
+
+import persistence.GuestName;
+import persistence.Invoice;
+
+import java.util.List;
+import java.util.Map;
+
+public record NightAudit(List<Invoice> invoices, Map<GuestName, Error> errors) {
+}
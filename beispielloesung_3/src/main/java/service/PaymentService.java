@@ -3,10 +3,18 @@ package service;
 import persistence.*;
 
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class PaymentService {
 
+    private static final Amount PRICE_PER_NIGHT = new Amount(100.0);
+    // invoicing waits for the journal, so the audit has threads of its own rather than the common fork-join pool
+    private static final int AUDIT_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
     private final PaymentRepository paymentRepository;
     private final RoomRepository roomRepository;
     private final InvoiceRepository invoiceRepository;
@@ -24,29 +32,30 @@ public class PaymentService {
     }
 
     public void payAmount(GuestName guestName, Amount amount){
-        List<Payment> guestPayments = paymentRepository.load(guestName);
-        guestPayments.add(new Payment(guestName, amount));
-        paymentRepository.save(guestName, guestPayments);
+        paymentRepository.add(new Payment(guestName, amount));
     }
 
     public Amount remainingCredit(GuestName guestName){
-        return paymentRepository.load(guestName).stream()
-                .map(payment -> payment.getPaidAmount().subtract(payment.getUsedAmount()))
-                .reduce(Amount.ZERO, Amount::add);
+        return Amount.ofCents(paymentRepository.remainingCreditInCents(guestName));
     }
 
     public Either<Error,Invoice> produceInvoice(GuestName guestName, DepartureDate departureDate, List<RoomNumber> roomNumbers) {
-        List<Room> bookedRooms = roomRepository.findAllRoomsWithBookingsByGuestName(guestName)
-                .stream().filter(r -> roomNumbers.contains(r.getRoomNumber())).toList();
+        // a concurrent night audit must not invoice the same bookings between the check and the charge
+        GuestName canonicalGuestName = guestName.intern();
+        return paymentRepository.inLedgerOf(canonicalGuestName, () -> produceInvoiceOfGuest(canonicalGuestName, departureDate, roomNumbers));
+    }
+
+    private Either<Error,Invoice> produceInvoiceOfGuest(GuestName guestName, DepartureDate departureDate, List<RoomNumber> roomNumbers) {
         Map<RoomNumber, List<Booking>> bookingsForRooms = new HashMap<>();
-        bookedRooms.forEach(room -> {
-            List<Booking> applicableBookings = room.getBookings().stream()
-                    .filter(booking -> Objects.equals(booking.getGuestName(), guestName))
-                    .filter(booking -> departureDate.isOnOrBefore(booking.getDepartureDate()))
-                    .filter(booking -> !booking.isInvoiced())
-                    .filter(Booking::isCheckedIn).collect(Collectors.toList());
-            bookingsForRooms.put(room.getRoomNumber(), applicableBookings);
-        });
+        roomRepository.findAllRoomBookingsByGuestName(guestName).stream()
+                .filter(roomBooking -> roomNumbers.contains(roomBooking.roomNumber()))
+                .forEach(roomBooking -> {
+                    List<Booking> applicableBookings = bookingsForRooms.computeIfAbsent(roomBooking.roomNumber(), roomNumber -> new ArrayList<>());
+                    Booking booking = roomBooking.booking();
+                    if (departureDate.isOnOrBefore(booking.getDepartureDate()) && !booking.isInvoiced() && booking.isCheckedIn()) {
+                        applicableBookings.add(booking);
+                    }
+                });
         List<RoomNumber> roomsWithoutBookings = new ArrayList<>();
         bookingsForRooms.forEach(
                 (roomNumber, bookings) -> {
@@ -56,44 +65,106 @@ public class PaymentService {
                 }
         );
         if (roomsWithoutBookings.size() > 0) {
-            return Either.ofError(new Error(String.format("No bookings to be invoiced for given customer " +
-                    "'%s', departureDate [%s] and roomNumbers %s", guestName.guestName(), departureDate, roomsWithoutBookings)));
-        }
-        Amount totalAmount =
-                bookingsForRooms.values().stream()
-                        .map(bookingsForRoom -> bookingsForRoom.stream()
-                                .map(booking -> new Amount(100.0 * booking.numberOfDays()))
-                                .reduce(Amount.ZERO, Amount::add)
-                        ).reduce(Amount.ZERO, Amount::add);
-        Amount credit = remainingCredit(guestName);
-        if(totalAmount.isMoreThan(credit)){
-            return Either.ofError(new Error("Payment insufficient. Necessary payment: " + (totalAmount.subtract(credit))));
+            return Either.ofError(new Error(ErrorCode.NO_BOOKINGS_TO_INVOICE, guestName.guestName(), departureDate, roomsWithoutBookings));
         }
+        return invoice(guestName, bookingsForRooms);
+    }
 
-        List<Payment> payments = paymentRepository.load(guestName);
-        payments.sort((o1, o2) -> o1.getPaymentDate().paymentDate().isEqual(o2.getPaymentDate().paymentDate()) ? 0 :
-                        o1.getPaymentDate().paymentDate().isBefore(o2.getPaymentDate().paymentDate()) ? -1 : 1);
-        Amount remainingTotalAmount = totalAmount;
-        for (Payment payment: payments){
-            if(remainingTotalAmount.isMoreThan(Amount.ZERO)){
-                Amount remainingCreditForPayment = payment.getPaidAmount().subtract(payment.getUsedAmount());
-                if(remainingCreditForPayment.isMoreThanOrEqual(remainingTotalAmount)){
-                    payment.reduceCreditBy(remainingTotalAmount);
-                    remainingTotalAmount = Amount.ZERO;
-                    break;
-                } else {
-                    payment.reduceCreditBy(remainingCreditForPayment);
-                    remainingTotalAmount = remainingTotalAmount.subtract(remainingCreditForPayment);
+    // invoices every checked-in guest for the stays that end on or before the departure date and are not invoiced yet
+    public NightAudit nightAudit(DepartureDate departureDate){
+        Map<GuestName, Map<RoomNumber, List<Booking>>> bookingsByGuest = new HashMap<>();
+        for (Room room : roomRepository.getRooms().values()) {
+            for (Booking booking : room.getBookings()) {
+                if (departureDate.isOnOrBefore(booking.getDepartureDate()) && !booking.isInvoiced() && booking.isCheckedIn()) {
+                    bookingsByGuest.computeIfAbsent(booking.getGuestName(), guestName -> new HashMap<>())
+                            .computeIfAbsent(room.getRoomNumber(), roomNumber -> new ArrayList<>())
+                            .add(booking);
                 }
+            }
+        }
+
+        // guests share no bookings and no payments, so each one is invoiced on its own task
+        List<Callable<Map.Entry<GuestName, Either<Error, Invoice>>>> audits = new ArrayList<>();
+        bookingsByGuest.forEach((guestName, candidates) -> audits.add(() -> auditGuest(guestName, candidates)));
+        List<Map.Entry<GuestName, Either<Error, Invoice>>> results = runAudits(audits);
+
+        List<Invoice> invoices = new ArrayList<>();
+        Map<GuestName, Error> errors = new HashMap<>();
+        for (Map.Entry<GuestName, Either<Error, Invoice>> result : results) {
+            if (result.getValue().isError()) {
+                errors.put(result.getKey(), result.getValue().error());
             } else {
-                break;
+                invoices.add(result.getValue().result());
+            }
+        }
+        return new NightAudit(invoices, errors);
+    }
+
+    private List<Map.Entry<GuestName, Either<Error, Invoice>>> runAudits(List<Callable<Map.Entry<GuestName, Either<Error, Invoice>>>> audits) {
+        if (audits.isEmpty()) {
+            return List.of();
+        }
+        List<Map.Entry<GuestName, Either<Error, Invoice>>> results = new ArrayList<>();
+        try (ExecutorService auditExecutor = Executors.newFixedThreadPool(Math.min(AUDIT_THREADS, audits.size()))) {
+            for (Future<Map.Entry<GuestName, Either<Error, Invoice>>> audit : auditExecutor.invokeAll(audits)) {
+                Map.Entry<GuestName, Either<Error, Invoice>> result = audit.get();
+                if (result != null) {
+                    results.add(result);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Night audit was interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
             }
+            throw new IllegalStateException("Night audit failed", e.getCause());
+        }
+        return results;
+    }
+
+    // a guest whose credit cannot cover the stays is reported without taking, or creating, their ledger
+    private Map.Entry<GuestName, Either<Error, Invoice>> auditGuest(GuestName guestName, Map<RoomNumber, List<Booking>> candidates) {
+        long totalInCents = totalInCents(notYetInvoiced(candidates));
+        long creditInCents = paymentRepository.remainingCreditInCents(guestName);
+        if (totalInCents > 0 && creditInCents < totalInCents) {
+            return Map.entry(guestName, Either.ofError(new Error(ErrorCode.PAYMENT_INSUFFICIENT, Amount.ofCents(totalInCents - creditInCents))));
+        }
+        return paymentRepository.inLedgerOf(guestName, () -> invoiceNotYetInvoiced(guestName, candidates));
+    }
+
+    // the bookings may have been invoiced since the single pass over the rooms, they are checked again under the guest's ledger
+    private Map.Entry<GuestName, Either<Error, Invoice>> invoiceNotYetInvoiced(GuestName guestName, Map<RoomNumber, List<Booking>> candidates) {
+        Map<RoomNumber, List<Booking>> bookingsForRooms = notYetInvoiced(candidates);
+        return bookingsForRooms.isEmpty() ? null : Map.entry(guestName, invoice(guestName, bookingsForRooms));
+    }
+
+    private static Map<RoomNumber, List<Booking>> notYetInvoiced(Map<RoomNumber, List<Booking>> candidates) {
+        Map<RoomNumber, List<Booking>> bookingsForRooms = new HashMap<>();
+        candidates.forEach((roomNumber, bookings) -> bookings.stream()
+                .filter(booking -> !booking.isInvoiced())
+                .forEach(booking -> bookingsForRooms.computeIfAbsent(roomNumber, number -> new ArrayList<>()).add(booking)));
+        return bookingsForRooms;
+    }
+
+    private static long totalInCents(Map<RoomNumber, List<Booking>> bookingsForRooms) {
+        return bookingsForRooms.values().stream()
+                .flatMap(List::stream)
+                .mapToLong(booking -> PRICE_PER_NIGHT.cents() * booking.numberOfDays())
+                .sum();
+    }
+
+    private Either<Error,Invoice> invoice(GuestName guestName, Map<RoomNumber, List<Booking>> bookingsForRooms) {
+        long totalInCents = totalInCents(bookingsForRooms);
+        if(!paymentRepository.allocate(guestName, totalInCents)){
+            long creditInCents = paymentRepository.remainingCreditInCents(guestName);
+            return Either.ofError(new Error(ErrorCode.PAYMENT_INSUFFICIENT, Amount.ofCents(totalInCents - creditInCents)));
         }
-        paymentRepository.save(guestName, payments);
 
         roomRepository.markBookingsAsInvoiced(bookingsForRooms);
 
-        Invoice invoice = new Invoice(new InvoiceId(UUID.randomUUID().toString()), guestName, bookingsForRooms, totalAmount);
+        Invoice invoice = new Invoice(new InvoiceId(UUID.randomUUID().toString()), guestName, bookingsForRooms, Amount.ofCents(totalInCents));
 
         invoiceRepository.save(invoice);
 
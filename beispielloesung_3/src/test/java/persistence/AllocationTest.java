@@ -0,0 +1,58 @@
+package persistence;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AllocationTest {
+
+    private final GuestName guestName = new GuestName("Peter");
+    private final ArrivalDate arrivalDate = new ArrivalDate(2020, 10, 10);
+    private final DepartureDate departureDate = new DepartureDate(2020, 10, 17);
+
+    @Test
+    void roomIsFree_allocatesNothing() {
+        // GIVEN
+        Room room = new Room(new RoomNumber("1"), new ArrayList<>(List.of(
+                new Booking(arrivalDate, departureDate, guestName),
+                new Booking(arrivalDate.plusDays(14), departureDate.plusDays(14), guestName))));
+        ArrivalDate requestedArrival = arrivalDate.plusDays(7);
+        DepartureDate requestedDeparture = departureDate.plusDays(7);
+
+        // WHEN
+        long allocatedBytes = Allocations.bytesPerOperation(() -> room.roomIsFree(requestedArrival, requestedDeparture));
+
+        // THEN
+        assertThat(allocatedBytes).isZero();
+    }
+
+    @Test
+    void numberOfDays_longStayAllocatesNothing() {
+        // GIVEN
+        Booking booking = new Booking(arrivalDate, departureDate.plusDays(365), guestName);
+
+        // WHEN
+        long allocatedBytes = Allocations.bytesPerOperation(booking::numberOfDays);
+
+        // THEN
+        assertThat(booking.numberOfDays()).isEqualTo(372L);
+        assertThat(allocatedBytes).isZero();
+    }
+
+    @Test
+    void remainingCreditInCents_allocatesNothing() {
+        // GIVEN
+        PaymentRepository payments = new PaymentRepository();
+        payments.add(new Payment(guestName, new Amount(100.0)));
+        payments.add(new Payment(guestName, new Amount(50.0)));
+
+        // WHEN
+        long allocatedBytes = Allocations.bytesPerOperation(() -> payments.remainingCreditInCents(guestName));
+
+        // THEN
+        assertThat(allocatedBytes).isZero();
+    }
+}
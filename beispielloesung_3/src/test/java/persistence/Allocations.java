@@ -0,0 +1,76 @@
+package persistence;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+import org.junit.jupiter.api.Assumptions;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+
+// Measures how many bytes an operation allocates on the calling thread, once the JIT has had
+// a chance to compile it, so tests can put a budget on the allocations of hot paths.
+// The budgets rely on C2 and its escape analysis, so the tests are skipped on a VM that runs
+// without them, e.g. with -Xint, -XX:-DoEscapeAnalysis or an instrumenting coverage agent.
+public final class Allocations {
+
+    private static final int WARM_UP_RUNS = 20_000;
+    private static final int MEASURED_RUNS = 10_000;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private Allocations() {
+    }
+
+    public static long bytesPerOperation(Runnable operation) {
+        Assumptions.assumeTrue(escapeAnalysisIsOn(), "allocation budgets need the JIT with escape analysis");
+        for (int i = 0; i < WARM_UP_RUNS; i++) {
+            operation.run();
+        }
+        long before = THREADS.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < MEASURED_RUNS; i++) {
+            operation.run();
+        }
+        long allocated = THREADS.getCurrentThreadAllocatedBytes() - before;
+        return allocated / MEASURED_RUNS;
+    }
+
+    // The heap in use once the garbage collector got rid of everything unreachable, i.e. what the live
+    // objects retain. System.gc() is only a hint, so the test is skipped unless two collections in a row agree.
+    public static long retainedHeapBytes() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long used = -1;
+        boolean settled = false;
+        for (int attempt = 0; attempt < 10 && !settled; attempt++) {
+            memory.gc();
+            long previous = used;
+            used = memory.getHeapMemoryUsage().getUsed();
+            settled = previous >= 0 && Math.abs(used - previous) <= 64 * 1024;
+        }
+        Assumptions.assumeTrue(settled, "the garbage collector does not settle on the heap in use");
+        return used;
+    }
+
+    private static boolean escapeAnalysisIsOn() {
+        if ("NONE".equals(System.getProperty("java.compiler")) || System.getProperty("java.vm.info", "").contains("interpreted")) {
+            return false;
+        }
+        for (String argument : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (argument.startsWith("-javaagent") || argument.startsWith("-agentlib:jdwp")
+                    || argument.equals("-Xint") || argument.startsWith("-XX:TieredStopAtLevel=")) {
+                return false;
+            }
+        }
+        HotSpotDiagnosticMXBean hotSpot = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+        return hotSpot != null
+                && vmOptionIsOn(hotSpot, "DoEscapeAnalysis")
+                && vmOptionIsOn(hotSpot, "EliminateAllocations");
+    }
+
+    private static boolean vmOptionIsOn(HotSpotDiagnosticMXBean hotSpot, String name) {
+        try {
+            return Boolean.parseBoolean(hotSpot.getVMOption(name).getValue());
+        } catch (IllegalArgumentException unknownOption) {
+            return false;
+        }
+    }
+}
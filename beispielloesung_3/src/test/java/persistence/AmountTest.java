@@ -0,0 +1,25 @@
+package persistence;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AmountTest {
+
+    @Test
+    void sumsDoNotDrift() {
+        // WHEN
+        Amount sum = new Amount(0.1).add(new Amount(0.2));
+
+        // THEN
+        assertThat(sum).isEqualTo(new Amount(0.3));
+        assertThat(sum.amount()).isEqualTo(0.3);
+    }
+
+    @Test
+    void amountIsKeptInCents() {
+        // THEN
+        assertThat(new Amount(42.5).cents()).isEqualTo(4250L);
+        assertThat(Amount.ofCents(4250)).isEqualTo(new Amount(42.5));
+    }
+}
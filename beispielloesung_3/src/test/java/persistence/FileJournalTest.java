@@ -0,0 +1,200 @@
+package persistence;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import service.HotelService;
+import service.PaymentService;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FileJournalTest {
+
+    @TempDir
+    Path directory;
+
+    private final GuestName peter = new GuestName("Peter");
+    private final GuestName anna = new GuestName("Anna");
+    private final RoomNumber roomNumber1 = new RoomNumber("1");
+    private final ArrivalDate arrivalDate = new ArrivalDate(2020, 10, 10);
+    private final DepartureDate departureDate = new DepartureDate(2020, 10, 12);
+
+    @Test
+    void replay_rebuildsAllRepositories() throws IOException {
+        // GIVEN
+        Path file = directory.resolve("hotel.journal");
+        try (FileJournal journal = FileJournal.open(file)) {
+            RoomRepository rooms = new RoomRepository(journal);
+            PaymentRepository payments = new PaymentRepository(journal);
+            InvoiceRepository invoices = new InvoiceRepository(journal);
+            rooms.save(new Room(roomNumber1, new ArrayList<>()));
+            rooms.save(new Room(new RoomNumber("2"), new ArrayList<>()));
+            HotelService hotelService = new HotelService(rooms);
+            PaymentService paymentService = new PaymentService(payments, rooms, invoices);
+            RoomNumber petersRoom = hotelService.bookRoom(BookingRequest.of(arrivalDate, departureDate, peter).result()).result();
+            hotelService.bookRoom(BookingRequest.of(arrivalDate, departureDate, anna).result());
+            hotelService.checkIn(peter, arrivalDate);
+            paymentService.payAmount(peter, new Amount(250.0));
+            paymentService.produceInvoice(peter, departureDate, List.of(petersRoom));
+            hotelService.checkOut(peter, petersRoom, departureDate);
+        }
+
+        // WHEN
+        RoomRepository rooms;
+        PaymentRepository payments;
+        InvoiceRepository invoices;
+        try (FileJournal journal = FileJournal.open(file)) {
+            rooms = new RoomRepository(journal);
+            payments = new PaymentRepository(journal);
+            invoices = new InvoiceRepository(journal);
+            journal.replay(rooms, payments, invoices);
+        }
+
+        // THEN
+        assertThat(rooms.getRooms()).hasSize(2);
+        assertThat(rooms.findAllBookingsByGuestName(anna)).hasSize(1);
+        Booking petersBooking = rooms.findAllBookingsByGuestName(peter).getFirst();
+        assertThat(petersBooking.isCheckedIn()).isTrue();
+        assertThat(petersBooking.isInvoiced()).isTrue();
+        assertThat(petersBooking.isCheckedOut()).isTrue();
+        assertThat(payments.remainingCreditInCents(peter)).isEqualTo(new Amount(50.0).cents());
+        assertThat(invoices.loadFor(peter)).hasSize(1);
+        assertThat(invoices.loadFor(peter).getFirst().totalAmount()).isEqualTo(new Amount(200.0));
+    }
+
+    @Test
+    void replay_ignoresTornRecordAtTheEnd() throws IOException {
+        // GIVEN
+        Path file = directory.resolve("hotel.journal");
+        try (FileJournal journal = FileJournal.open(file)) {
+            new RoomRepository(journal).save(new Room(roomNumber1, new ArrayList<>()));
+        }
+        Files.write(file, new byte[]{0, 0, 0, 42, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        // WHEN
+        RoomRepository rooms = new RoomRepository();
+        try (FileJournal journal = FileJournal.open(file)) {
+            journal.replay(rooms, new PaymentRepository(), new InvoiceRepository());
+            new RoomRepository(journal).save(new Room(new RoomNumber("2"), new ArrayList<>()));
+        }
+        RoomRepository reopened = new RoomRepository();
+        try (FileJournal journal = FileJournal.open(file)) {
+            journal.replay(reopened, new PaymentRepository(), new InvoiceRepository());
+        }
+
+        // THEN
+        assertThat(rooms.getRooms()).hasSize(1);
+        assertThat(reopened.getRooms()).hasSize(2);
+    }
+
+    @Test
+    void replay_treatsALengthBeyondTheEndOfTheFileAsTornRecord() throws IOException {
+        // GIVEN
+        Path file = directory.resolve("hotel.journal");
+        try (FileJournal journal = FileJournal.open(file)) {
+            new RoomRepository(journal).save(new Room(roomNumber1, new ArrayList<>()));
+        }
+        Files.write(file, new byte[]{0x7f, -1, -1, -1, 0, 0, 0, 0, 0, 0, 0, 0, 1}, StandardOpenOption.APPEND);
+
+        // WHEN
+        RoomRepository rooms = new RoomRepository();
+        try (FileJournal journal = FileJournal.open(file)) {
+            journal.replay(rooms, new PaymentRepository(), new InvoiceRepository());
+        }
+
+        // THEN
+        assertThat(rooms.getRooms()).hasSize(1);
+    }
+
+    @Test
+    void replay_keepsEveryConcurrentBooking() throws Exception {
+        // GIVEN
+        Path file = directory.resolve("hotel.journal");
+        try (FileJournal journal = FileJournal.open(file)) {
+            RoomRepository rooms = new RoomRepository(journal);
+            for (int i = 1; i <= 20; i++) {
+                rooms.save(new Room(new RoomNumber(Integer.toString(i)), new ArrayList<>()));
+            }
+            HotelService hotelService = new HotelService(rooms);
+            ExecutorService executor = Executors.newFixedThreadPool(16);
+            for (int i = 0; i < 200; i++) {
+                GuestName guestName = new GuestName("Guest " + i);
+                ArrivalDate arrival = arrivalDate.plusDays(i % 10);
+                executor.submit(() -> hotelService.bookRoom(BookingRequest.of(arrival, new DepartureDate(arrival.arrivalDate().plusDays(1)), guestName).result()));
+            }
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+
+        // WHEN
+        RoomRepository rooms = new RoomRepository();
+        try (FileJournal journal = FileJournal.open(file)) {
+            journal.replay(rooms, new PaymentRepository(), new InvoiceRepository());
+        }
+
+        // THEN
+        assertThat(rooms.getRooms().values().stream().mapToInt(room -> room.getBookings().size()).sum()).isEqualTo(200);
+    }
+
+    @Test
+    void replay_endsWithTheLastOfConcurrentSavesOfAnInvoice() throws Exception {
+        // GIVEN
+        Path file = directory.resolve("hotel.journal");
+        InvoiceId id = new InvoiceId("invoice");
+        InvoiceRepository liveInvoices;
+        try (FileJournal journal = FileJournal.open(file)) {
+            liveInvoices = new InvoiceRepository(journal);
+            InvoiceRepository invoices = liveInvoices;
+            ExecutorService executor = Executors.newFixedThreadPool(8);
+            for (int i = 0; i < 400; i++) {
+                long cents = i;
+                executor.submit(() -> invoices.save(new Invoice(id, peter, Map.of(), Amount.ofCents(cents))));
+            }
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+
+        // WHEN
+        InvoiceRepository invoices = new InvoiceRepository();
+        try (FileJournal journal = FileJournal.open(file)) {
+            journal.replay(new RoomRepository(), new PaymentRepository(), invoices);
+        }
+
+        // THEN
+        assertThat(invoices.getFor(id).totalAmount()).isEqualTo(liveInvoices.getFor(id).totalAmount());
+    }
+
+    @Test
+    void replay_statusChangeOfACancelledBookingLeavesNoRecord() throws IOException {
+        // GIVEN
+        Path file = directory.resolve("hotel.journal");
+        try (FileJournal journal = FileJournal.open(file)) {
+            RoomRepository rooms = new RoomRepository(journal);
+            rooms.save(new Room(roomNumber1, new ArrayList<>()));
+            Booking booking = new Booking(arrivalDate, departureDate, peter);
+            Room room = rooms.bookFreeRoom(booking).orElseThrow();
+            rooms.cancelBooking(room, booking);
+            rooms.markBookingAsCheckedIn(roomNumber1, booking);
+            rooms.markBookingsAsInvoiced(Map.of(roomNumber1, List.of(booking)));
+        }
+
+        // WHEN
+        RoomRepository rooms = new RoomRepository();
+        try (FileJournal journal = FileJournal.open(file)) {
+            journal.replay(rooms, new PaymentRepository(), new InvoiceRepository());
+        }
+
+        // THEN
+        assertThat(rooms.getRooms().get(roomNumber1).getBookings()).isEmpty();
+    }
+}
@@ -1,8 +1,11 @@
 package persistence;
 
+import org.junit.jupiter.api.Assumptions;
 import org.junit.jupiter.api.Test;
 import service.HotelService;
 
+import java.lang.ref.WeakReference;
+
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.catchThrowable;
 
@@ -17,4 +20,37 @@ public class GuestNameTest {
         assertThat(t).isInstanceOf(IllegalArgumentException.class);
     }
 
+    @Test
+    void bookingsOfTheSameGuestShareOneGuestName() {
+        // GIVEN
+        ArrivalDate arrivalDate = new ArrivalDate(2020, 10, 10);
+        DepartureDate departureDate = new DepartureDate(2020, 10, 12);
+
+        // WHEN
+        Booking firstBooking = new Booking(arrivalDate, departureDate, new GuestName("Peter"));
+        Booking secondBooking = new Booking(arrivalDate.plusDays(7), departureDate.plusDays(7), new GuestName("Peter"));
+
+        // THEN
+        assertThat(firstBooking.getGuestName()).isSameAs(secondBooking.getGuestName());
+        assertThat(new GuestName("Peter").intern()).isSameAs(firstBooking.getGuestName());
+    }
+
+    @Test
+    void internedGuestNameIsDroppedWhenNothingRefersToIt() throws InterruptedException {
+        // GIVEN
+        WeakReference<GuestName> interned = new WeakReference<>(new GuestName("Guest who left").intern());
+
+        // WHEN
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (interned.get() != null && System.nanoTime() < deadline) {
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        // THEN
+        // System.gc() is only a hint, a VM that did not collect the name in time says nothing about the pool
+        Assumptions.assumeTrue(interned.get() == null, "the garbage collector did not run in time");
+        GuestName returningGuest = new GuestName("Guest who left");
+        assertThat(returningGuest.intern()).isSameAs(returningGuest);
+    }
 }
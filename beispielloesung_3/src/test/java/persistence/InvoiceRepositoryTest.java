@@ -0,0 +1,80 @@
+package persistence;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class InvoiceRepositoryTest {
+
+    private final GuestName peter = new GuestName("Peter");
+    private final GuestName paul = new GuestName("Paul");
+
+    @Test
+    void loadPage_returnsTheInvoicesOfTheGuestInCreationOrder() {
+        // GIVEN
+        InvoiceRepository invoices = new InvoiceRepository();
+        List<Invoice> invoicesOfPeter = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Invoice invoice = invoice("peter-" + i, peter);
+            invoicesOfPeter.add(invoice);
+            invoices.save(invoice);
+            invoices.save(invoice("paul-" + i, paul));
+        }
+
+        // WHEN
+        InvoicePage firstPage = invoices.loadPage(peter, InvoiceCursor.FIRST, 2);
+        InvoicePage secondPage = invoices.loadPage(peter, firstPage.next().orElseThrow(), 2);
+        InvoicePage lastPage = invoices.loadPage(peter, secondPage.next().orElseThrow(), 2);
+
+        // THEN
+        assertThat(firstPage.invoices()).containsExactly(invoicesOfPeter.get(0), invoicesOfPeter.get(1));
+        assertThat(secondPage.invoices()).containsExactly(invoicesOfPeter.get(2), invoicesOfPeter.get(3));
+        assertThat(lastPage.invoices()).containsExactly(invoicesOfPeter.get(4));
+        assertThat(lastPage.next()).isEmpty();
+    }
+
+    @Test
+    void streamFor_returnsAllInvoicesOfTheGuestAcrossPages() {
+        // GIVEN
+        InvoiceRepository invoices = new InvoiceRepository();
+        for (int i = 0; i < 250; i++) {
+            invoices.save(invoice("peter-" + i, peter));
+        }
+        invoices.save(invoice("paul", paul));
+
+        // WHEN
+        List<Invoice> streamed = invoices.streamFor(peter).toList();
+
+        // THEN
+        assertThat(streamed).hasSize(250);
+        assertThat(streamed.get(249).id()).isEqualTo(new InvoiceId("peter-249"));
+        assertThat(invoices.streamFor(peter).findFirst().orElseThrow().id()).isEqualTo(new InvoiceId("peter-0"));
+    }
+
+    @Test
+    void loadPage_cursorStaysValidWhenAnInvoiceMovesToAnotherGuest() {
+        // GIVEN
+        InvoiceRepository invoices = new InvoiceRepository();
+        for (int i = 0; i < 4; i++) {
+            invoices.save(invoice("peter-" + i, peter));
+        }
+        InvoicePage firstPage = invoices.loadPage(peter, InvoiceCursor.FIRST, 2);
+        invoices.save(invoice("peter-0", paul));
+
+        // WHEN
+        InvoicePage secondPage = invoices.loadPage(peter, firstPage.next().orElseThrow(), 2);
+
+        // THEN
+        assertThat(secondPage.invoices()).extracting("id").containsExactly(new InvoiceId("peter-2"), new InvoiceId("peter-3"));
+        assertThat(invoices.loadFor(peter)).hasSize(3);
+        assertThat(invoices.loadFor(paul)).extracting("id").containsExactly(new InvoiceId("peter-0"));
+    }
+
+    private Invoice invoice(String id, GuestName guestName) {
+        return new Invoice(new InvoiceId(id), guestName, Map.of(), new Amount(100.0));
+    }
+}
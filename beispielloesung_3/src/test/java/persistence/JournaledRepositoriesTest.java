@@ -0,0 +1,160 @@
+package persistence;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import service.HotelService;
+import service.PaymentService;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JournaledRepositoriesTest {
+
+    @TempDir
+    Path directory;
+
+    private final GuestName peter = new GuestName("Peter");
+    private final GuestName anna = new GuestName("Anna");
+    private final ArrivalDate arrivalDate = new ArrivalDate(2020, 10, 10);
+    private final DepartureDate departureDate = new DepartureDate(2020, 10, 12);
+
+    @Test
+    void open_restoresSnapshotAndJournalTail() throws IOException {
+        // GIVEN
+        try (JournaledRepositories repositories = JournaledRepositories.open(directory)) {
+            repositories.rooms().save(new Room(new RoomNumber("1"), new ArrayList<>()));
+            repositories.rooms().save(new Room(new RoomNumber("2"), new ArrayList<>()));
+            HotelService hotelService = new HotelService(repositories.rooms());
+            PaymentService paymentService = new PaymentService(repositories.payments(), repositories.rooms(), repositories.invoices());
+            RoomNumber petersRoom = hotelService.bookRoom(BookingRequest.of(arrivalDate, departureDate, peter).result()).result();
+            hotelService.checkIn(peter, arrivalDate);
+            paymentService.payAmount(peter, new Amount(250.0));
+
+            repositories.checkpoint();
+
+            paymentService.produceInvoice(peter, departureDate, List.of(petersRoom));
+            hotelService.bookRoom(BookingRequest.of(arrivalDate, departureDate, anna).result());
+        }
+
+        // WHEN
+        try (JournaledRepositories repositories = JournaledRepositories.open(directory)) {
+
+            // THEN
+            assertThat(Files.exists(directory.resolve("hotel.snapshot"))).isTrue();
+            assertThat(repositories.rooms().getRooms()).hasSize(2);
+            assertThat(repositories.rooms().findAllBookingsByGuestName(peter).getFirst().isInvoiced()).isTrue();
+            assertThat(repositories.rooms().findAllBookingsByGuestName(anna)).hasSize(1);
+            assertThat(repositories.payments().remainingCreditInCents(peter)).isEqualTo(new Amount(50.0).cents());
+            assertThat(repositories.invoices().loadFor(peter)).hasSize(1);
+        }
+    }
+
+    @Test
+    void checkpoint_snapshotAloneRestoresTheState() throws IOException {
+        // GIVEN
+        try (JournaledRepositories repositories = JournaledRepositories.open(directory)) {
+            repositories.rooms().save(new Room(new RoomNumber("1"), new ArrayList<>()));
+            new HotelService(repositories.rooms()).bookRoom(BookingRequest.of(arrivalDate, departureDate, peter).result());
+
+            // WHEN
+            repositories.checkpoint();
+        }
+
+        // THEN
+        RoomRepository rooms = new RoomRepository();
+        long offset = Snapshot.read(directory.resolve("hotel.snapshot"), rooms, new PaymentRepository(), new InvoiceRepository());
+        assertThat(offset).isPositive();
+        assertThat(rooms.findAllBookingsByGuestName(peter)).hasSize(1);
+    }
+
+    @Test
+    void checkpoint_dropsTheJournalRecordsTheSnapshotCovers() throws IOException {
+        // GIVEN
+        Path journalFile = directory.resolve("hotel.journal");
+        try (JournaledRepositories repositories = JournaledRepositories.open(directory)) {
+            repositories.rooms().save(new Room(new RoomNumber("1"), new ArrayList<>()));
+            repositories.rooms().save(new Room(new RoomNumber("2"), new ArrayList<>()));
+            HotelService hotelService = new HotelService(repositories.rooms());
+            hotelService.bookRoom(BookingRequest.of(arrivalDate, departureDate, peter).result());
+            long journalSizeBeforeCheckpoint = Files.size(journalFile);
+
+            // WHEN
+            repositories.checkpoint();
+            long journalSizeAfterCheckpoint = Files.size(journalFile);
+            hotelService.bookRoom(BookingRequest.of(arrivalDate, departureDate, anna).result());
+
+            // THEN
+            assertThat(journalSizeAfterCheckpoint).isLessThanOrEqualTo(journalSizeBeforeCheckpoint / 4);
+        }
+        try (JournaledRepositories repositories = JournaledRepositories.open(directory)) {
+            assertThat(repositories.rooms().findAllBookingsByGuestName(peter)).hasSize(1);
+            assertThat(repositories.rooms().findAllBookingsByGuestName(anna)).hasSize(1);
+            repositories.checkpoint();
+        }
+        try (JournaledRepositories repositories = JournaledRepositories.open(directory)) {
+            assertThat(repositories.rooms().findAllBookingsByGuestName(anna)).hasSize(1);
+        }
+    }
+
+    @Test
+    void checkpoint_keepsTheInvoiceOfABookingWhoseRoomWasReplaced() throws IOException {
+        // GIVEN
+        RoomNumber roomNumber = new RoomNumber("1");
+        try (JournaledRepositories repositories = JournaledRepositories.open(directory)) {
+            invoiceStayOfPeter(repositories, roomNumber);
+            repositories.rooms().save(new Room(roomNumber, new ArrayList<>()));
+
+            // WHEN
+            repositories.checkpoint();
+            repositories.checkpoint();
+        }
+
+        // THEN
+        try (JournaledRepositories repositories = JournaledRepositories.open(directory)) {
+            assertThat(repositories.rooms().findAllBookingsByGuestName(peter)).isEmpty();
+            List<Invoice> invoices = repositories.invoices().loadFor(peter);
+            assertThat(invoices).hasSize(1);
+            assertThat(invoices.getFirst().bookingsForRooms().get(roomNumber)).hasSize(1);
+            assertThat(invoices.getFirst().bookingsForRooms().get(roomNumber).getFirst().isInvoiced()).isTrue();
+        }
+    }
+
+    @Test
+    void checkpoint_keepsTheInvoiceOfACancelledBooking() throws IOException {
+        // GIVEN
+        RoomNumber roomNumber = new RoomNumber("1");
+        try (JournaledRepositories repositories = JournaledRepositories.open(directory)) {
+            invoiceStayOfPeter(repositories, roomNumber);
+            Booking booking = repositories.rooms().findAllBookingsByGuestName(peter).getFirst();
+            repositories.rooms().cancelBooking(repositories.rooms().getRooms().get(roomNumber), booking);
+
+            // WHEN
+            repositories.checkpoint();
+            repositories.checkpoint();
+        }
+
+        // THEN
+        try (JournaledRepositories repositories = JournaledRepositories.open(directory)) {
+            assertThat(repositories.rooms().findAllBookingsByGuestName(peter)).isEmpty();
+            List<Invoice> invoices = repositories.invoices().loadFor(peter);
+            assertThat(invoices).hasSize(1);
+            assertThat(invoices.getFirst().bookingsForRooms().get(roomNumber).getFirst().getGuestName()).isEqualTo(peter);
+            assertThat(invoices.getFirst().totalAmount()).isEqualTo(new Amount(200.0));
+        }
+    }
+
+    private void invoiceStayOfPeter(JournaledRepositories repositories, RoomNumber roomNumber) {
+        repositories.rooms().save(new Room(roomNumber, new ArrayList<>()));
+        HotelService hotelService = new HotelService(repositories.rooms());
+        PaymentService paymentService = new PaymentService(repositories.payments(), repositories.rooms(), repositories.invoices());
+        hotelService.bookRoom(BookingRequest.of(arrivalDate, departureDate, peter).result());
+        hotelService.checkIn(peter, arrivalDate);
+        paymentService.payAmount(peter, new Amount(200.0));
+        paymentService.produceInvoice(peter, departureDate, List.of(roomNumber));
+    }
+}
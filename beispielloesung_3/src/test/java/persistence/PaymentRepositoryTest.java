@@ -0,0 +1,95 @@
+package persistence;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PaymentRepositoryTest {
+
+    private final GuestName guestName = new GuestName("Peter");
+    private final Payment oldPayment = payment(LocalDate.of(2020, 10, 1), 50.0);
+    private final Payment largePayment = payment(LocalDate.of(2020, 10, 5), 200.0);
+    private final Payment newPayment = payment(LocalDate.of(2020, 10, 9), 100.0);
+
+    @Test
+    void allocate_oldestFirstUsesUpThePaymentsInDateOrder() {
+        // GIVEN
+        PaymentRepository payments = new PaymentRepository(Journal.NONE, AllocationPolicy.OLDEST_FIRST);
+        payments.add(newPayment);
+        payments.add(oldPayment);
+        payments.add(largePayment);
+
+        // WHEN
+        boolean firstAllocated = payments.allocate(guestName, 10000);
+        boolean secondAllocated = payments.allocate(guestName, 15000);
+
+        // THEN
+        assertThat(firstAllocated).isTrue();
+        assertThat(secondAllocated).isTrue();
+        assertThat(oldPayment.getRemainingCreditInCents()).isEqualTo(0L);
+        assertThat(largePayment.getRemainingCreditInCents()).isEqualTo(0L);
+        assertThat(newPayment.getRemainingCreditInCents()).isEqualTo(10000L);
+        assertThat(payments.remainingCreditInCents(guestName)).isEqualTo(10000L);
+    }
+
+    @Test
+    void allocate_largestFirstLeavesTheSmallPaymentsAndRefusesWhatTheCreditDoesNotCover() {
+        // GIVEN
+        PaymentRepository payments = new PaymentRepository(Journal.NONE, AllocationPolicy.LARGEST_FIRST);
+        payments.add(oldPayment);
+        payments.add(newPayment);
+        payments.add(largePayment);
+
+        // WHEN
+        boolean allocated = payments.allocate(guestName, 25000);
+        boolean refused = payments.allocate(guestName, 20000);
+
+        // THEN
+        assertThat(allocated).isTrue();
+        assertThat(refused).isFalse();
+        assertThat(largePayment.getRemainingCreditInCents()).isEqualTo(0L);
+        assertThat(newPayment.getRemainingCreditInCents()).isEqualTo(5000L);
+        assertThat(oldPayment.getRemainingCreditInCents()).isEqualTo(5000L);
+        assertThat(payments.remainingCreditInCents(guestName)).isEqualTo(10000L);
+    }
+
+    @Test
+    void allocate_largestFirstTakesThePaymentWithTheMostCreditLeft() {
+        // GIVEN
+        PaymentRepository payments = new PaymentRepository(Journal.NONE, AllocationPolicy.LARGEST_FIRST);
+        payments.add(newPayment);
+        payments.add(largePayment);
+        payments.allocate(guestName, 15000);
+
+        // WHEN
+        boolean allocated = payments.allocate(guestName, 6000);
+
+        // THEN
+        assertThat(allocated).isTrue();
+        assertThat(largePayment.getRemainingCreditInCents()).isEqualTo(5000L);
+        assertThat(newPayment.getRemainingCreditInCents()).isEqualTo(4000L);
+    }
+
+    @Test
+    void allocate_largestFirstReordersPaymentsWhoseCreditWasUsedOnReplay() {
+        // GIVEN
+        PaymentRepository payments = new PaymentRepository(Journal.NONE, AllocationPolicy.LARGEST_FIRST);
+        payments.add(newPayment);
+        payments.add(largePayment);
+        payments.useCredit(guestName, 1, 15000);
+
+        // WHEN
+        boolean allocated = payments.allocate(guestName, 6000);
+
+        // THEN
+        assertThat(allocated).isTrue();
+        assertThat(largePayment.getRemainingCreditInCents()).isEqualTo(5000L);
+        assertThat(newPayment.getRemainingCreditInCents()).isEqualTo(4000L);
+    }
+
+    private Payment payment(LocalDate paymentDate, double amount) {
+        return new Payment(guestName, new Amount(amount), new PaymentDate(paymentDate), 0);
+    }
+}
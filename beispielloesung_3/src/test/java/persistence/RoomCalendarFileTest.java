@@ -0,0 +1,145 @@
+package persistence;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import service.HotelService;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class RoomCalendarFileTest {
+
+    @TempDir
+    Path directory;
+
+    private final GuestName peter = new GuestName("Peter");
+    private final GuestName anna = new GuestName("Anna");
+    private final RoomNumber roomNumber1 = new RoomNumber("1");
+    private final RoomNumber roomNumber2 = new RoomNumber("2");
+    private final ArrivalDate arrivalDate = new ArrivalDate(2020, 10, 10);
+    private final DepartureDate departureDate = new DepartureDate(2020, 10, 12);
+
+    @Test
+    void open_restoresRoomsBookingsAndCalendarsInPlace() throws IOException {
+        // GIVEN
+        Path file = directory.resolve("rooms.calendar");
+        try (RoomCalendarFile calendarFile = RoomCalendarFile.create(file, LocalDate.of(2020, 1, 1), 366, 10, 100)) {
+            RoomRepository rooms = calendarFile.rooms();
+            rooms.save(new Room(roomNumber1, new ArrayList<>()));
+            rooms.save(new Room(roomNumber2, new ArrayList<>()));
+            HotelService hotelService = new HotelService(rooms);
+            hotelService.bookRoom(BookingRequest.of(arrivalDate, departureDate, peter).result());
+            RoomNumber annasRoom = hotelService.bookRoom(BookingRequest.of(arrivalDate, departureDate, anna).result()).result();
+            hotelService.checkIn(peter, arrivalDate);
+            Room room = rooms.getRooms().get(annasRoom);
+            rooms.cancelBooking(room, room.getBookings().getFirst());
+        }
+
+        // WHEN
+        try (RoomCalendarFile calendarFile = RoomCalendarFile.open(file)) {
+            RoomRepository rooms = calendarFile.rooms();
+
+            // THEN
+            assertThat(rooms.getRooms()).hasSize(2);
+            assertThat(rooms.findAllBookingsByGuestName(anna)).isEmpty();
+            Booking petersBooking = rooms.findAllBookingsByGuestName(peter).getFirst();
+            assertThat(petersBooking.isCheckedIn()).isTrue();
+            assertThat(petersBooking.getDepartureDate()).isEqualTo(departureDate);
+            assertThat(rooms.getRooms().get(roomNumber1).roomIsFree(arrivalDate, departureDate)).isFalse();
+            assertThat(rooms.getRooms().get(roomNumber2).roomIsFree(arrivalDate, departureDate)).isTrue();
+        }
+    }
+
+    @Test
+    void open_afterCrashRebuildsCalendarsFromTheBookingRecords() throws IOException {
+        // GIVEN
+        Path file = directory.resolve("rooms.calendar");
+        try (RoomCalendarFile crashed = RoomCalendarFile.create(directory.resolve("crashed.calendar"), LocalDate.of(2020, 1, 1), 366, 10, 100)) {
+            crashed.rooms().save(new Room(roomNumber1, new ArrayList<>()));
+            crashed.rooms().bookFreeRoom(new Booking(arrivalDate, departureDate, peter));
+            // the nights reach the mapped calendar, the booking record is never written
+            crashed.rooms().getRooms().get(roomNumber1).addBooking(new Booking(arrivalDate.plusDays(7), departureDate.plusDays(7), anna));
+            crashed.force();
+            // the file as a crash right now would leave it
+            Files.copy(directory.resolve("crashed.calendar"), file);
+        }
+
+        // WHEN
+        try (RoomCalendarFile calendarFile = RoomCalendarFile.open(file)) {
+            Room room = calendarFile.rooms().getRooms().get(roomNumber1);
+
+            // THEN
+            assertThat(room.getBookings()).hasSize(1);
+            assertThat(room.roomIsFree(arrivalDate, departureDate)).isFalse();
+            assertThat(room.roomIsFree(arrivalDate.plusDays(7), departureDate.plusDays(7))).isTrue();
+        }
+    }
+
+    @Test
+    void open_failsWhileTheFileIsOpen() throws IOException {
+        // GIVEN
+        Path file = directory.resolve("rooms.calendar");
+        RoomCalendarFile calendarFile = RoomCalendarFile.create(file, LocalDate.of(2020, 1, 1), 366, 10, 100);
+
+        // WHEN
+        Throwable t = catchThrowable(() -> RoomCalendarFile.open(file).close());
+        calendarFile.close();
+
+        // THEN
+        assertThat(t).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    void bookFreeRoom_inAFullFileLeavesRoomAndCalendarAsTheyWere() throws IOException {
+        // GIVEN
+        Path file = directory.resolve("rooms.calendar");
+        Throwable t;
+        try (RoomCalendarFile calendarFile = RoomCalendarFile.create(file, LocalDate.of(2020, 1, 1), 366, 10, 1)) {
+            RoomRepository rooms = calendarFile.rooms();
+            rooms.save(new Room(roomNumber1, new ArrayList<>()));
+            rooms.bookFreeRoom(new Booking(arrivalDate, departureDate, peter));
+
+            // WHEN
+            t = catchThrowable(() -> rooms.bookFreeRoom(new Booking(arrivalDate.plusDays(7), departureDate.plusDays(7), anna)));
+
+            // THEN
+            assertThat(t).isInstanceOf(IllegalStateException.class);
+            assertThat(rooms.getRooms().get(roomNumber1).getBookings()).hasSize(1);
+            assertThat(rooms.findAllBookingsByGuestName(anna)).isEmpty();
+            assertThat(rooms.findFreeRoom(arrivalDate.plusDays(7), departureDate.plusDays(7)).isPresent()).isTrue();
+        }
+        try (RoomCalendarFile calendarFile = RoomCalendarFile.open(file)) {
+            Room room = calendarFile.rooms().getRooms().get(roomNumber1);
+            assertThat(room.getBookings()).hasSize(1);
+            assertThat(room.roomIsFree(arrivalDate.plusDays(7), departureDate.plusDays(7))).isTrue();
+        }
+    }
+
+    @Test
+    void addBooking_outsideOfTheCalendarLeavesTheRoomAsItWas() throws IOException {
+        // GIVEN
+        Path file = directory.resolve("rooms.calendar");
+        try (RoomCalendarFile calendarFile = RoomCalendarFile.create(file, LocalDate.of(2020, 1, 1), 366, 10, 100)) {
+            RoomRepository rooms = calendarFile.rooms();
+            rooms.save(new Room(roomNumber1, new ArrayList<>()));
+            Room room = rooms.getRooms().get(roomNumber1);
+
+            // WHEN
+            Throwable t = catchThrowable(() -> rooms.addBooking(room, new Booking(new ArrivalDate(2023, 10, 10), new DepartureDate(2023, 10, 12), peter)));
+
+            // THEN
+            assertThat(t).isInstanceOf(IllegalArgumentException.class);
+            assertThat(room.getBookings()).isEmpty();
+            assertThat(rooms.findAllBookingsByGuestName(peter)).isEmpty();
+        }
+        try (RoomCalendarFile calendarFile = RoomCalendarFile.open(file)) {
+            assertThat(calendarFile.rooms().getRooms().get(roomNumber1).getBookings()).isEmpty();
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package persistence;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RoomRepositoryTest {
+
+    private final GuestName guestName = new GuestName("Peter");
+    private final RoomNumber roomNumber1 = new RoomNumber("1");
+    private final RoomNumber roomNumber2 = new RoomNumber("2");
+    private final ArrivalDate arrivalDate = new ArrivalDate(2020, 10, 10);
+    private final DepartureDate departureDate = new DepartureDate(2020, 10, 12);
+
+    @Test
+    void findAllBookingsByGuestName_cancelledBookingIsGone() {
+        // GIVEN
+        RoomRepository rooms = new RoomRepository();
+        rooms.save(new Room(roomNumber1, new ArrayList<>()));
+        Booking booking = new Booking(arrivalDate, departureDate, guestName);
+        Room room = rooms.bookFreeRoom(booking).orElseThrow();
+
+        // WHEN
+        rooms.cancelBooking(room, booking);
+
+        // THEN
+        assertThat(rooms.findAllBookingsByGuestName(guestName)).hasSize(0);
+        assertThat(rooms.findAllRoomsWithBookingsByGuestName(guestName)).hasSize(0);
+    }
+
+    @Test
+    void findAllRoomsWithBookingsByGuestName_replacedRoomIsFoundWithItsNewBookings() {
+        // GIVEN
+        RoomRepository rooms = new RoomRepository();
+        rooms.save(new Room(roomNumber1, new ArrayList<>(List.of(new Booking(arrivalDate, departureDate, guestName)))));
+        Booking newBooking = new Booking(arrivalDate.plusDays(7), departureDate.plusDays(7), guestName);
+        Room replacement = new Room(roomNumber1, new ArrayList<>(List.of(newBooking)));
+
+        // WHEN
+        rooms.save(replacement);
+
+        // THEN
+        assertThat(rooms.findAllBookingsByGuestName(guestName)).containsExactly(newBooking);
+        assertThat(rooms.findAllRoomsWithBookingsByGuestName(guestName)).containsExactly(replacement);
+    }
+
+    @Test
+    void findFreeRoom_replacedRoomIsFreeInTheNightsOfItsOldBookingsOnly() {
+        // GIVEN
+        RoomRepository rooms = new RoomRepository();
+        rooms.save(new Room(roomNumber1, new ArrayList<>(List.of(new Booking(arrivalDate, departureDate, guestName)))));
+        rooms.save(new Room(roomNumber2, new ArrayList<>(List.of(new Booking(arrivalDate.plusDays(7), departureDate.plusDays(7), guestName)))));
+        Room replacement = new Room(roomNumber1, new ArrayList<>(List.of(new Booking(arrivalDate.plusDays(7), departureDate.plusDays(7), guestName))));
+
+        // WHEN
+        rooms.save(replacement);
+
+        // THEN
+        assertThat(rooms.findFreeRoom(arrivalDate, departureDate).orElseThrow()).isSameAs(replacement);
+        assertThat(rooms.findFreeRoom(arrivalDate.plusDays(7), departureDate.plusDays(7)).isPresent()).isFalse();
+    }
+
+    @Test
+    void findFreeRoom_findsTheRoomCancelledBeyondTheFirst64RoomsAndNights() {
+        // GIVEN
+        RoomRepository rooms = new RoomRepository();
+        List<Room> newRooms = new ArrayList<>();
+        for (int i = 1; i <= 100; i++) {
+            newRooms.add(new Room(new RoomNumber(Integer.toString(i)), new ArrayList<>()));
+        }
+        rooms.saveAll(newRooms);
+        // 20 nights reach into the next 64 nights of the index
+        DepartureDate longDeparture = new DepartureDate(arrivalDate.arrivalDate().plusDays(20));
+        Booking cancelled = null;
+        for (int i = 1; i <= 100; i++) {
+            Booking booking = new Booking(arrivalDate, longDeparture, guestName);
+            Room room = rooms.bookFreeRoom(booking).orElseThrow();
+            if (room.getRoomNumber().equals(new RoomNumber("70"))) {
+                cancelled = booking;
+            }
+        }
+        Room room70 = rooms.getRooms().get(new RoomNumber("70"));
+
+        // WHEN
+        rooms.cancelBooking(room70, cancelled);
+
+        // THEN
+        assertThat(rooms.findFreeRoom(arrivalDate.plusDays(19), longDeparture).orElseThrow()).isSameAs(room70);
+        assertThat(rooms.bookFreeRoom(new Booking(arrivalDate, longDeparture, guestName)).orElseThrow()).isSameAs(room70);
+        assertThat(rooms.findFreeRoom(arrivalDate, longDeparture).isPresent()).isFalse();
+    }
+
+    @Test
+    void markBookingsAsInvoiced_onlyTheInvoicedBookingIsMarked() {
+        // GIVEN
+        RoomRepository rooms = new RoomRepository();
+        rooms.save(new Room(roomNumber1, new ArrayList<>()));
+        rooms.save(new Room(roomNumber2, new ArrayList<>()));
+        Booking invoicedBooking = new Booking(arrivalDate, departureDate, guestName);
+        Booking sameStayInOtherRoom = new Booking(arrivalDate, departureDate, guestName);
+        rooms.bookFreeRoom(invoicedBooking);
+        rooms.bookFreeRoom(sameStayInOtherRoom);
+
+        // WHEN
+        rooms.markBookingsAsInvoiced(Map.of(rooms.findBooking(invoicedBooking.getId()).orElseThrow().roomNumber(), List.of(invoicedBooking)));
+
+        // THEN
+        assertThat(invoicedBooking.isInvoiced()).isTrue();
+        assertThat(sameStayInOtherRoom.isInvoiced()).isFalse();
+    }
+
+    @Test
+    void cancelBooking_cancelledBookingKeepsItsValuesWhileItsRowIsReused() {
+        // GIVEN
+        RoomRepository rooms = new RoomRepository();
+        rooms.save(new Room(roomNumber1, new ArrayList<>()));
+        Booking cancelledBooking = new Booking(arrivalDate, departureDate, guestName);
+        Room room = rooms.bookFreeRoom(cancelledBooking).orElseThrow();
+        rooms.markBookingAsCheckedIn(roomNumber1, cancelledBooking);
+        rooms.cancelBooking(room, cancelledBooking);
+        GuestName otherGuest = new GuestName("Paul");
+        Booking nextBooking = new Booking(arrivalDate.plusDays(7), departureDate.plusDays(7), otherGuest);
+
+        // WHEN
+        rooms.bookFreeRoom(nextBooking);
+
+        // THEN
+        assertThat(cancelledBooking.getArrivalDate()).isEqualTo(arrivalDate);
+        assertThat(cancelledBooking.getGuestName()).isEqualTo(guestName);
+        assertThat(cancelledBooking.isCheckedIn()).isTrue();
+        assertThat(nextBooking.getArrivalDate()).isEqualTo(arrivalDate.plusDays(7));
+        assertThat(nextBooking.isCheckedIn()).isFalse();
+        assertThat(rooms.findAllBookingsByGuestName(otherGuest)).containsExactly(nextBooking);
+        assertThat(rooms.findBooking(cancelledBooking.getId())).isEmpty();
+    }
+
+    @Test
+    void markBookingAsCheckedIn_cancelledBookingLeavesTheBookingReusingItsRowAlone() {
+        // GIVEN
+        RoomRepository rooms = new RoomRepository();
+        rooms.save(new Room(roomNumber1, new ArrayList<>()));
+        Booking cancelledBooking = new Booking(arrivalDate, departureDate, guestName);
+        Room room = rooms.bookFreeRoom(cancelledBooking).orElseThrow();
+        rooms.cancelBooking(room, cancelledBooking);
+        Booking nextBooking = new Booking(arrivalDate, departureDate, new GuestName("Paul"));
+        rooms.bookFreeRoom(nextBooking);
+
+        // WHEN
+        rooms.markBookingAsCheckedIn(roomNumber1, cancelledBooking);
+
+        // THEN
+        assertThat(cancelledBooking.isCheckedIn()).isTrue();
+        assertThat(nextBooking.isCheckedIn()).isFalse();
+        assertThat(rooms.findAllArrivals(arrivalDate)).extracting("booking").containsExactly(nextBooking);
+    }
+
+    @Test
+    void findAllArrivalsByGuestName_readsBookingsBeyondTheFirstPageOfTheTable() {
+        // GIVEN
+        RoomRepository rooms = new RoomRepository();
+        for (int i = 1; i <= 10; i++) {
+            rooms.save(new Room(new RoomNumber(Integer.toString(i)), new ArrayList<>()));
+        }
+        GuestName otherGuest = new GuestName("Paul");
+        for (int i = 0; i < 5000; i++) {
+            ArrivalDate arrival = arrivalDate.plusDays(i / 10);
+            rooms.bookFreeRoom(new Booking(arrival, new DepartureDate(arrival.arrivalDate().plusDays(1)), i % 2 == 0 ? guestName : otherGuest));
+        }
+        ArrivalDate lastArrival = arrivalDate.plusDays(499);
+        RoomBooking cancelled = rooms.findAllArrivals(lastArrival).getFirst();
+        rooms.cancelBooking(rooms.getRooms().get(cancelled.roomNumber()), cancelled.booking());
+
+        // WHEN
+        List<RoomBooking> arrivalsOfPeter = rooms.findAllArrivalsByGuestName(guestName, lastArrival);
+        List<RoomBooking> arrivalsOfPaul = rooms.findAllArrivalsByGuestName(otherGuest, lastArrival);
+
+        // THEN
+        assertThat(arrivalsOfPeter).hasSize(4);
+        assertThat(arrivalsOfPaul).hasSize(5);
+        assertThat(rooms.findAllBookingsByGuestName(guestName)).hasSize(2499);
+        assertThat(rooms.findAllArrivals(lastArrival)).hasSize(9);
+        assertThat(rooms.findBooking(arrivalsOfPaul.getFirst().booking().getId()).orElseThrow()).isEqualTo(arrivalsOfPaul.getFirst());
+    }
+
+    @Test
+    void markBookingAsCheckedIn_showsInEveryViewOfTheBooking() {
+        // GIVEN
+        RoomRepository rooms = new RoomRepository();
+        rooms.save(new Room(roomNumber1, new ArrayList<>()));
+        Booking booking = new Booking(arrivalDate, departureDate, guestName);
+        rooms.bookFreeRoom(booking);
+        Booking view = rooms.findAllBookingsByGuestName(guestName).getFirst();
+
+        // WHEN
+        rooms.markBookingAsCheckedIn(roomNumber1, booking);
+
+        // THEN
+        assertThat(view).isEqualTo(booking);
+        assertThat(view.isCheckedIn()).isTrue();
+        assertThat(rooms.getRooms().get(roomNumber1).getBookings().getFirst().isCheckedIn()).isTrue();
+    }
+
+    @Test
+    void bookFreeRoom_offHeapRepositoryBooksAndCancelsLikeTheHeapOne() {
+        // GIVEN
+        RoomRepository rooms = new RoomRepository(Journal.NONE, BookingStorage.OFF_HEAP);
+        rooms.save(new Room(roomNumber1, new ArrayList<>(List.of(new Booking(arrivalDate, departureDate, guestName)))));
+        Booking sameStay = new Booking(arrivalDate, departureDate, guestName);
+        Booking laterStay = new Booking(arrivalDate.plusDays(7), departureDate.plusDays(7), guestName);
+
+        // WHEN
+        boolean sameStayBooked = rooms.bookFreeRoom(sameStay).isPresent();
+        Room room = rooms.bookFreeRoom(laterStay).orElseThrow();
+        rooms.markBookingAsCheckedIn(roomNumber1, laterStay);
+
+        // THEN
+        assertThat(sameStayBooked).isFalse();
+        assertThat(rooms.findAllBookingsByGuestName(guestName)).hasSize(2);
+        assertThat(laterStay.getDepartureDate()).isEqualTo(departureDate.plusDays(7));
+        assertThat(laterStay.isCheckedIn()).isTrue();
+        assertThat(room.roomIsFree(arrivalDate.plusDays(7), departureDate.plusDays(7))).isFalse();
+        rooms.cancelBooking(room, laterStay);
+        assertThat(room.roomIsFree(arrivalDate.plusDays(7), departureDate.plusDays(7))).isTrue();
+    }
+
+    @Test
+    void findBooking_findsTheRemainingBookingsAfterOthersWereCancelled() {
+        // GIVEN
+        RoomRepository rooms = new RoomRepository(Journal.NONE, BookingStorage.OFF_HEAP);
+        rooms.save(new Room(roomNumber1, new ArrayList<>()));
+        rooms.save(new Room(roomNumber2, new ArrayList<>()));
+        List<Booking> bookings = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            ArrivalDate arrival = arrivalDate.plusDays(i / 2);
+            // ids not in UUID form are kept apart from the others
+            BookingId id = i % 10 == 0 ? new BookingId("booking-" + i) : new BookingId(java.util.UUID.randomUUID().toString());
+            Booking booking = new Booking(id, arrival, new DepartureDate(arrival.arrivalDate().plusDays(1)), guestName);
+            rooms.bookFreeRoom(booking);
+            bookings.add(booking);
+        }
+
+        // WHEN
+        for (int i = 0; i < bookings.size(); i += 3) {
+            RoomBooking roomBooking = rooms.findBooking(bookings.get(i).getId()).orElseThrow();
+            rooms.cancelBooking(rooms.getRooms().get(roomBooking.roomNumber()), bookings.get(i));
+        }
+
+        // THEN
+        for (int i = 0; i < bookings.size(); i++) {
+            assertThat(rooms.findBooking(bookings.get(i).getId()).isPresent()).isEqualTo(i % 3 != 0);
+        }
+        assertThat(rooms.findBooking(bookings.get(1).getId()).orElseThrow().booking().getArrivalDate()).isEqualTo(arrivalDate);
+        assertThat(rooms.findBooking(new BookingId("booking-10")).orElseThrow().booking().getId()).isEqualTo(new BookingId("booking-10"));
+    }
+
+    @Test
+    void bookFreeRoom_offHeapRepositoryKeepsTheHeapFlatAsBookingsGrow() {
+        // GIVEN
+        RoomRepository rooms = new RoomRepository(Journal.NONE, BookingStorage.OFF_HEAP);
+        for (int i = 1; i <= 50; i++) {
+            rooms.save(new Room(new RoomNumber(Integer.toString(i)), new ArrayList<>()));
+        }
+        List<GuestName> guests = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            guests.add(new GuestName("Guest " + i).intern());
+        }
+        int bookings = 20_000;
+        bookNights(rooms, guests, 0, bookings);
+        long heapBefore = Allocations.retainedHeapBytes();
+
+        // WHEN
+        bookNights(rooms, guests, bookings, 2 * bookings);
+        long heapAfter = Allocations.retainedHeapBytes();
+
+        // THEN
+        assertThat(rooms.findAllBookingsByGuestName(guests.getFirst())).hasSize(2 * bookings / guests.size());
+        // the rooms' calendars and the days with arrivals take a few bytes on the heap, the bookings none
+        assertThat(heapAfter - heapBefore).isLessThanOrEqualTo(4L * bookings);
+    }
+
+    // books one night in every room for each day, each guest in the same room every day
+    private void bookNights(RoomRepository rooms, List<GuestName> guests, int from, int to) {
+        for (int i = from; i < to; i++) {
+            ArrivalDate arrival = arrivalDate.plusDays(i / guests.size());
+            rooms.bookFreeRoom(new Booking(arrival, new DepartureDate(arrival.arrivalDate().plusDays(1)), guests.get(i % guests.size())));
+        }
+    }
+}
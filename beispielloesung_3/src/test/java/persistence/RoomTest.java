@@ -0,0 +1,62 @@
+package persistence;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RoomTest {
+
+    private final GuestName guestName = new GuestName("Peter");
+
+    @Test
+    void roomIsFree_stayAcrossSeveralCalendarWords() {
+        // GIVEN
+        Room room = new Room(new RoomNumber("1"), new ArrayList<>());
+        room.addBooking(new Booking(new ArrivalDate(2020, 1, 1), new DepartureDate(2020, 12, 31), guestName));
+
+        // THEN
+        assertThat(room.roomIsFree(new ArrivalDate(2019, 6, 1), new DepartureDate(2020, 1, 1))).isTrue();
+        assertThat(room.roomIsFree(new ArrivalDate(2019, 6, 1), new DepartureDate(2020, 1, 2))).isFalse();
+        assertThat(room.roomIsFree(new ArrivalDate(2020, 7, 15), new DepartureDate(2020, 7, 16))).isFalse();
+        assertThat(room.roomIsFree(new ArrivalDate(2020, 12, 31), new DepartureDate(2021, 2, 1))).isTrue();
+    }
+
+    @Test
+    void cancelBooking_freesTheNightsAgain() {
+        // GIVEN
+        ArrivalDate arrivalDate = new ArrivalDate(2020, 10, 10);
+        DepartureDate departureDate = new DepartureDate(2020, 10, 12);
+        Booking booking = new Booking(arrivalDate, departureDate, guestName);
+        Room room = new Room(new RoomNumber("1"), new ArrayList<>());
+        room.addBooking(booking);
+
+        // WHEN
+        boolean cancelled = room.cancelBooking(booking);
+
+        // THEN
+        assertThat(cancelled).isTrue();
+        assertThat(room.getBookings()).hasSize(0);
+        assertThat(room.roomIsFree(arrivalDate, departureDate)).isTrue();
+    }
+
+    @Test
+    void cancelBooking_bookingWithTheSameArrivalDayKeepsItsNights() {
+        // GIVEN
+        ArrivalDate arrivalDate = new ArrivalDate(2020, 10, 10);
+        Booking shortStay = new Booking(arrivalDate, new DepartureDate(2020, 10, 12), guestName);
+        Booking longStay = new Booking(arrivalDate, new DepartureDate(2020, 10, 15), new GuestName("Paul"));
+        Room room = new Room(new RoomNumber("1"), new ArrayList<>(List.of(shortStay, longStay)));
+
+        // WHEN
+        boolean cancelled = room.cancelBooking(shortStay);
+
+        // THEN
+        assertThat(cancelled).isTrue();
+        assertThat(room.getBookings()).containsExactly(longStay);
+        assertThat(room.roomIsFree(arrivalDate, new DepartureDate(2020, 10, 11))).isFalse();
+        assertThat(room.roomIsFree(new ArrivalDate(2020, 10, 14), new DepartureDate(2020, 10, 15))).isFalse();
+    }
+}
@@ -5,6 +5,10 @@ import org.junit.jupiter.api.Test;
 import persistence.*;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -74,6 +78,58 @@ class HotelServiceTest {
         assertThat(result.error().errorMessage()).isEqualTo("No available room found for the desired dates");
     }
 
+    @Test
+    void requestRoom_roomNotAvailableIsReportedByCodeWithoutNewAllocations() {
+        // GIVEN
+        ArrivalDate arrivalDate = new ArrivalDate(2020, 10, 10);
+        DepartureDate departureDate = new DepartureDate(2020, 10, 12);
+        HotelService service = new HotelService(setupRoomsWithOneRoomAndBookings(new Booking(arrivalDate,
+                departureDate, guestWithBooking)));
+
+        // WHEN
+        Either<Error, Amount> firstResult = service.requestRoom(arrivalDate, departureDate);
+        Either<Error, Amount> secondResult = service.requestRoom(arrivalDate, departureDate);
+
+        // THEN
+        assertThat(firstResult.error().code()).isEqualTo(ErrorCode.NO_AVAILABLE_ROOM);
+        assertThat(secondResult).isSameAs(firstResult);
+    }
+
+    @Test
+    void requestRoom_roomNotAvailableEqualsTheErrorWithItsMessage() {
+        // GIVEN
+        ArrivalDate arrivalDate = new ArrivalDate(2020, 10, 10);
+        DepartureDate departureDate = new DepartureDate(2020, 10, 12);
+        HotelService service = new HotelService(setupRoomsWithOneRoomAndBookings(new Booking(arrivalDate,
+                departureDate, guestWithBooking)));
+
+        // WHEN
+        Either<Error, Amount> result = service.requestRoom(arrivalDate, departureDate);
+
+        // THEN
+        assertThat(result.error()).isEqualTo(new Error("No available room found for the desired dates"));
+        assertThat(result.error().hashCode()).isEqualTo(new Error("No available room found for the desired dates").hashCode());
+    }
+
+    @Test
+    void requestRoom_roomAvailableAllocatesNothing() {
+        // GIVEN
+        HotelService service = setupHotelService(70);
+        ArrivalDate arrivalDate = new ArrivalDate(2020, 10, 10);
+        DepartureDate departureDate = new DepartureDate(2020, 10, 13);
+        // the free room is found in the second word of 64 rooms
+        for (int i = 0; i < 65; i++) {
+            service.bookRoom(BookingRequest.of(arrivalDate, departureDate, guestWithBooking).result());
+        }
+
+        // WHEN
+        long allocatedBytes = Allocations.bytesPerOperation(() -> service.requestRoom(arrivalDate, departureDate));
+
+        // THEN
+        assertThat(service.requestRoom(arrivalDate, departureDate).result()).isEqualTo(new Amount(300.0));
+        assertThat(allocatedBytes).isZero();
+    }
+
     @Test
     void requestRoom_roomAvailableAlthoughBookedOnDifferentDate() {
         // GIVEN
@@ -122,6 +178,22 @@ class HotelServiceTest {
         assertThat(foundBookings.getFirst().getDepartureDate()).isEqualTo(departureDate);
     }
 
+    @Test
+    void bookRoom_bookingsOfTheSameRoomShareTheirResult() {
+        // GIVEN
+        HotelService service = new HotelService(setupRoomsWithOneRoomAndBookings());
+        ArrivalDate arrivalDate = new ArrivalDate(2020, 10, 10);
+        DepartureDate departureDate = new DepartureDate(2020, 10, 11);
+
+        // WHEN
+        Either<Error, RoomNumber> firstResult = service.bookRoom(BookingRequest.of(arrivalDate, departureDate, guestWithBooking).result());
+        Either<Error, RoomNumber> secondResult = service.bookRoom(BookingRequest.of(arrivalDate.plusDays(7), departureDate.plusDays(7), guestWithBooking).result());
+
+        // THEN
+        assertThat(firstResult.result()).isEqualTo(roomNumber1);
+        assertThat(secondResult).isSameAs(firstResult);
+    }
+
     @Test
     void bookRoom_bookTwoRoomsForSameNights() {
         // GIVEN
@@ -189,6 +261,57 @@ class HotelServiceTest {
         assertThat(foundBookings).hasSize(0);
     }
 
+    @Test
+    void bookRoom_lastFreeRoomIsFoundWhenHotelIsNearlyFull() {
+        // GIVEN
+        RoomRepository rooms = new RoomRepository();
+        for (int i = 1; i <= 3; i++) {
+            rooms.save(new Room(new RoomNumber(Integer.toString(i)), new ArrayList<>()));
+        }
+        HotelService service = new HotelService(rooms);
+        ArrivalDate arrivalDate = new ArrivalDate(2020, 10, 10);
+        DepartureDate departureDate = new DepartureDate(2020, 10, 13);
+        service.bookRoom(BookingRequest.of(arrivalDate, departureDate, new GuestName("Anna")).result());
+        service.bookRoom(BookingRequest.of(arrivalDate.plusDays(2), departureDate.plusDays(2), new GuestName("Ben")).result());
+
+        // WHEN
+        Either<Error, RoomNumber> result1 = service.bookRoom(BookingRequest.of(arrivalDate.plusDays(1), departureDate, new GuestName("Clara")).result());
+        Either<Error, RoomNumber> result2 = service.bookRoom(BookingRequest.of(arrivalDate.plusDays(2), departureDate, new GuestName("Dora")).result());
+
+        // THEN
+        assertThat(result1.isError()).isFalse();
+        assertThat(result2.isError()).isTrue();
+        assertThat(rooms.findAllRoomsWithBookingsByGuestName(new GuestName("Clara"))).hasSize(1);
+    }
+
+    @Test
+    void bookRoom_concurrentBookingsNeverDoubleBookARoom() throws Exception {
+        // GIVEN
+        HotelService service = setupHotelService(8);
+        ArrivalDate arrivalDate = new ArrivalDate(2020, 10, 10);
+        DepartureDate departureDate = new DepartureDate(2020, 10, 13);
+        List<Callable<Either<Error, RoomNumber>>> bookings = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            GuestName guestName = new GuestName("Guest " + i);
+            bookings.add(() -> service.bookRoom(BookingRequest.of(arrivalDate, departureDate, guestName).result()));
+        }
+
+        // WHEN
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        List<Future<Either<Error, RoomNumber>>> results = executor.invokeAll(bookings);
+        executor.shutdown();
+
+        // THEN
+        List<RoomNumber> bookedRooms = new ArrayList<>();
+        for (Future<Either<Error, RoomNumber>> result : results) {
+            if (!result.get().isError()) {
+                bookedRooms.add(result.get().result());
+            }
+        }
+        assertThat(bookedRooms).hasSize(8);
+        assertThat(new HashSet<>(bookedRooms)).hasSize(8);
+    }
+
     @Test
     void bookRoom_roomAvailableAlthoughBookedOnDifferentDate() {
         // GIVEN
@@ -243,6 +366,20 @@ class HotelServiceTest {
         assertThat(result.error().errorMessage()).isEqualTo("Guest cannot check in because they did not book a room");
     }
 
+    @Test
+    void checkIn_withoutGuestName_error() {
+        // GIVEN
+        RoomRepository rooms = setupRoomsWithOneRoomAndBookings();
+        HotelService service = new HotelService(rooms);
+
+        // WHEN
+        Either<Error, List<RoomNumber>> result = service.checkIn(null, new ArrivalDate(2020, 10, 10));
+
+        // THEN
+        assertThat(result.isError()).isTrue();
+        assertThat(result.error().errorMessage()).isEqualTo("Guest cannot check in because they did not book a room");
+    }
+
     @Test
     void checkIn_roomWasBookedOnDifferentDate() {
         // GIVEN
@@ -261,6 +398,46 @@ class HotelServiceTest {
         assertThat(result.result().size()).isEqualTo(0);
     }
 
+    @Test
+    void expectedArrivals_listsTheDaysArrivalsNotYetCheckedIn() {
+        // GIVEN
+        ArrivalDate arrivalDate = new ArrivalDate(2020, 10, 10);
+        DepartureDate departureDate = new DepartureDate(2020, 10, 12);
+        RoomRepository rooms = new RoomRepository();
+        rooms.save(new Room(roomNumber1, new ArrayList<>()));
+        rooms.save(new Room(roomNumber2, new ArrayList<>()));
+        HotelService service = new HotelService(rooms);
+        service.bookRoom(BookingRequest.of(arrivalDate, departureDate, new GuestName("Fritz")).result());
+        RoomNumber annasRoom = service.bookRoom(BookingRequest.of(arrivalDate, departureDate, new GuestName("Anna")).result()).result();
+        service.bookRoom(BookingRequest.of(arrivalDate.plusDays(2), departureDate.plusDays(2), new GuestName("Paul")).result());
+        service.checkIn(new GuestName("Fritz"), arrivalDate);
+
+        // WHEN
+        List<RoomBooking> expectedArrivals = service.expectedArrivals(arrivalDate);
+
+        // THEN
+        assertThat(expectedArrivals).hasSize(1);
+        assertThat(expectedArrivals.getFirst().roomNumber()).isEqualTo(annasRoom);
+        assertThat(expectedArrivals.getFirst().booking().getGuestName()).isEqualTo(new GuestName("Anna"));
+    }
+
+    @Test
+    void checkOut_withoutGuestName_error() {
+        // GIVEN
+        ArrivalDate arrivalDate = new ArrivalDate(2020, 10, 10);
+        DepartureDate departureDate = new DepartureDate(2020, 10, 12);
+        RoomRepository rooms = setupRoomsWithOneRoomAndBookings(new Booking(arrivalDate,
+                departureDate, new GuestName("Fritz")));
+        HotelService service = new HotelService(rooms);
+
+        // WHEN
+        Either<Error, Booking> result = service.checkOut(null, roomNumber1, departureDate);
+
+        // THEN
+        assertThat(result.isError()).isTrue();
+        assertThat(result.error()).isEqualTo(new Error(ErrorCode.NO_BOOKING_TO_CHECK_OUT));
+    }
+
     @Test
     void checkOut_roomWasBookedButNotCheckedIn_error() {
         // GIVEN
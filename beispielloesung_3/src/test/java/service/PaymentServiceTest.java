@@ -6,6 +6,10 @@ import persistence.*;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 class PaymentServiceTest {
     private final GuestName guestName1 = new GuestName("Peter Meier");
@@ -68,6 +72,39 @@ class PaymentServiceTest {
         Assertions.assertThat(paymentRepository.load(new GuestName(guest2)).getFirst().getPaidAmount()).isEqualTo(new Amount(120.0));
     }
 
+    @Test
+    public void remainingCredit_sumOfAllPaymentsOfTheGuest() {
+        // GIVEN
+        PaymentRepository paymentRepository = new PaymentRepository();
+        PaymentService service = setupPaymentService(paymentRepository);
+        service.payAmount(guestName1, new Amount(42.0));
+        service.payAmount(guestName1, new Amount(0.5));
+        service.payAmount(new GuestName(guest2), new Amount(120.0));
+
+        // WHEN
+        Amount credit = service.remainingCredit(guestName1);
+
+        // THEN
+        Assertions.assertThat(credit).isEqualTo(new Amount(42.5));
+    }
+
+    @Test
+    public void remainingCredit_allocatesNothingButTheReturnedAmount() {
+        // GIVEN
+        PaymentRepository paymentRepository = new PaymentRepository();
+        PaymentService service = setupPaymentService(paymentRepository);
+        for (int i = 0; i < 100; i++) {
+            service.payAmount(guestName1, new Amount(1.0));
+        }
+
+        // WHEN
+        long allocatedBytes = Allocations.bytesPerOperation(() -> service.remainingCredit(guestName1));
+
+        // THEN
+        // a single Amount: object header plus its long
+        Assertions.assertThat(allocatedBytes).isLessThanOrEqualTo(24L);
+    }
+
     @Test
     public void produceInvoice_noPayment() {
         // GIVEN
@@ -437,5 +474,131 @@ class PaymentServiceTest {
                 .extracting("invoiced").containsExactly(true, false);
     }
 
-}
+    @Test
+    public void payAmount_concurrentPaymentsAreNeverLost() throws Exception {
+        // GIVEN
+        PaymentRepository paymentRepository = new PaymentRepository();
+        PaymentService service = setupPaymentService(paymentRepository);
+        List<GuestName> guestNames = List.of(guestName1, new GuestName(guest2), new GuestName("Jim"), new GuestName("Anna"));
+        int paymentsPerThread = 1000;
 
+        // WHEN
+        ExecutorService executor = Executors.newFixedThreadPool(64);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> payers = new ArrayList<>();
+        for (int thread = 0; thread < 64; thread++) {
+            GuestName guestName = guestNames.get(thread % guestNames.size());
+            payers.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < paymentsPerThread; i++) {
+                    service.payAmount(guestName, new Amount(1.0));
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> payer : payers) {
+            payer.get();
+        }
+        executor.shutdown();
+
+        // THEN
+        for (GuestName guestName : guestNames) {
+            Assertions.assertThat(paymentRepository.load(guestName)).hasSize(16 * paymentsPerThread);
+            Assertions.assertThat(service.remainingCredit(guestName)).isEqualTo(new Amount(16.0 * paymentsPerThread));
+        }
+    }
+
+    @Test
+    public void nightAudit_invoicesEveryCheckedInGuestAndReportsInsufficientCredit() {
+        // GIVEN
+        PaymentRepository paymentRepository = new PaymentRepository();
+        RoomRepository roomRepository = new RoomRepository();
+        roomRepository.save(new Room(roomNumber1, new ArrayList<>()));
+        roomRepository.save(new Room(roomNumber2, new ArrayList<>()));
+        ArrivalDate arrivalDate = new ArrivalDate(2020, 10, 10);
+        DepartureDate departureDate = new DepartureDate(2020, 10, 12);
+        GuestName guestName2 = new GuestName(guest2);
+
+        HotelService hotelService = new HotelService(roomRepository);
+        hotelService.bookRoom(BookingRequest.of(arrivalDate, departureDate, guestName1).result());
+        hotelService.bookRoom(BookingRequest.of(arrivalDate, departureDate, guestName2).result());
+        hotelService.checkIn(guestName1, arrivalDate);
+        hotelService.checkIn(guestName2, arrivalDate);
+
+        PaymentService service = setupPaymentService(paymentRepository, roomRepository);
+        service.payAmount(guestName1, new Amount(200.0));
+        service.payAmount(guestName2, new Amount(150.0));
+
+        // WHEN
+        NightAudit nightAudit = service.nightAudit(departureDate);
+
+        // THEN
+        Assertions.assertThat(nightAudit.invoices()).hasSize(1);
+        Assertions.assertThat(nightAudit.invoices().getFirst().guestName()).isEqualTo(guestName1);
+        Assertions.assertThat(nightAudit.invoices().getFirst().totalAmount()).isEqualTo(new Amount(200.0));
+        Assertions.assertThat(nightAudit.errors().get(guestName2).errorMessage()).isEqualTo("Payment insufficient. Necessary payment: " + new Amount(50.0));
+        Assertions.assertThat(roomRepository.findAllBookingsByGuestName(guestName1)).extracting("invoiced").containsExactly(true);
+        Assertions.assertThat(roomRepository.findAllBookingsByGuestName(guestName2)).extracting("invoiced").containsExactly(false);
+    }
+
+    @Test
+    public void nightAudit_guestWhoNeverPaidGetsNoLedger() {
+        // GIVEN
+        PaymentRepository paymentRepository = new PaymentRepository();
+        RoomRepository roomRepository = new RoomRepository();
+        roomRepository.save(new Room(roomNumber1, new ArrayList<>()));
+        ArrivalDate arrivalDate = new ArrivalDate(2020, 10, 10);
+        DepartureDate departureDate = new DepartureDate(2020, 10, 12);
+        HotelService hotelService = new HotelService(roomRepository);
+        hotelService.bookRoom(BookingRequest.of(arrivalDate, departureDate, guestName1).result());
+        hotelService.checkIn(guestName1, arrivalDate);
+        PaymentService service = setupPaymentService(paymentRepository, roomRepository);
+
+        // WHEN
+        NightAudit nightAudit = service.nightAudit(departureDate);
+
+        // THEN
+        Assertions.assertThat(nightAudit.invoices()).isEmpty();
+        Assertions.assertThat(nightAudit.errors().get(guestName1).errorMessage()).isEqualTo("Payment insufficient. Necessary payment: " + new Amount(200.0));
+        Assertions.assertThat(paymentRepository.findAllGuestNames()).isEmpty();
+    }
+
+    @Test
+    public void nightAudit_concurrentInvoiceOfTheSameGuestChargesOnlyOnce() throws Exception {
+        ArrivalDate arrivalDate = new ArrivalDate(2020, 10, 10);
+        DepartureDate departureDate = new DepartureDate(2020, 10, 12);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        for (int round = 0; round < 100; round++) {
+            // GIVEN
+            PaymentRepository paymentRepository = new PaymentRepository();
+            RoomRepository roomRepository = new RoomRepository();
+            InvoiceRepository invoiceRepository = new InvoiceRepository();
+            roomRepository.save(new Room(roomNumber1, new ArrayList<>()));
+            HotelService hotelService = new HotelService(roomRepository);
+            hotelService.bookRoom(BookingRequest.of(arrivalDate, departureDate, guestName1).result());
+            hotelService.checkIn(guestName1, arrivalDate);
+            PaymentService service = new PaymentService(paymentRepository, roomRepository, invoiceRepository);
+            service.payAmount(guestName1, new Amount(400.0));
+
+            // WHEN
+            CountDownLatch start = new CountDownLatch(1);
+            Future<NightAudit> nightAudit = executor.submit(() -> {
+                start.await();
+                return service.nightAudit(departureDate);
+            });
+            Future<Either<Error, Invoice>> invoice = executor.submit(() -> {
+                start.await();
+                return service.produceInvoice(guestName1, departureDate, List.of(roomNumber1));
+            });
+            start.countDown();
+            nightAudit.get();
+            invoice.get();
+
+            // THEN
+            Assertions.assertThat(invoiceRepository.loadFor(guestName1)).hasSize(1);
+            Assertions.assertThat(service.remainingCredit(guestName1)).isEqualTo(new Amount(200.0));
+        }
+        executor.shutdown();
+    }
+}
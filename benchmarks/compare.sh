@@ -0,0 +1,19 @@
+#!/bin/bash
+# Runs GuestStayBenchmark against aufgabe_1, aufgabe_3, beispielloesung_3 at a baseline commit and as it is now, in turn.
+# Usage: ./compare.sh [baseline-ref] [JMH arguments], e.g. ./compare.sh 6ba5344 -p roomCount=1000
+# The baseline defaults to 6ba5344, the tree before any of the optimisations.
+set -e
+cd "$(dirname "$0")"
+baseline=6ba5344
+if [ $# -gt 0 ] && [ "${1#-}" = "$1" ]; then
+    baseline=$1
+    shift
+fi
+mkdir -p results
+rm -rf build/beispielloesung_3_baseline
+mkdir -p build/beispielloesung_3_baseline
+git -C .. archive "$baseline:beispielloesung_3/src/main/java" | tar -x -C build/beispielloesung_3_baseline
+for module in aufgabe_1 aufgabe_3 beispielloesung_3_baseline beispielloesung_3; do
+    mvn -B -q clean package -P "$module"
+    java -jar "target/benchmarks-$module.jar" GuestStayBenchmark -prof gc -rf json -rff "results/$module.json" "$@"
+done
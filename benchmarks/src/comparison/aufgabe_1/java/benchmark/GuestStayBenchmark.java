@@ -0,0 +1,83 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import persistence.*;
+import service.HotelService;
+import service.PaymentService;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// aufgabe_1: plain String and double values, failures are exceptions
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GuestStayBenchmark {
+
+    static final LocalDate FIRST_ARRIVAL = LocalDate.of(2020, 1, 1);
+    static final int STAY_LENGTH = 3;
+
+    @State(Scope.Thread)
+    public static class Hotel {
+
+        @Param({"10", "100", "1000"})
+        public int roomCount;
+
+        @Param({"10", "100"})
+        public int bookingsPerRoom;
+
+        RoomRepository rooms;
+        PaymentRepository payments;
+        HotelService hotelService;
+        PaymentService paymentService;
+        LocalDate arrival;
+        LocalDate departure;
+        String guestName;
+        String freeRoom;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            rooms = new RoomRepository();
+            for (int room = 1; room <= roomCount; room++) {
+                List<BookingInterval> bookings = new ArrayList<>();
+                if (room < roomCount) {
+                    for (int i = 0; i < bookingsPerRoom; i++) {
+                        LocalDate startDate = FIRST_ARRIVAL.plusDays((long) i * STAY_LENGTH);
+                        BookingInterval booking = new BookingInterval(startDate, startDate.plusDays(STAY_LENGTH), "Guest " + room);
+                        booking.setCheckedIn(true);
+                        booking.setInvoiced(true);
+                        bookings.add(booking);
+                    }
+                }
+                rooms.save(new Room(Integer.toString(room), bookings));
+            }
+            payments = new PaymentRepository();
+            hotelService = new HotelService(rooms);
+            paymentService = new PaymentService(payments, rooms);
+            arrival = FIRST_ARRIVAL.plusDays((long) bookingsPerRoom / 2 * STAY_LENGTH);
+            departure = arrival.plusDays(STAY_LENGTH);
+            guestName = "Walk-in";
+            freeRoom = Integer.toString(roomCount);
+        }
+
+        @TearDown(Level.Invocation)
+        public void endStay() {
+            rooms.getRooms().get(freeRoom).getBookings().clear();
+            payments.save(guestName, new ArrayList<>());
+        }
+    }
+
+    @Benchmark
+    public Invoice guestStay(Hotel hotel) {
+        hotel.hotelService.bookRoom(hotel.arrival, hotel.departure, hotel.guestName);
+        hotel.hotelService.checkIn(hotel.guestName, hotel.arrival);
+        hotel.paymentService.payAmount(hotel.guestName, 100.0 * STAY_LENGTH);
+        Invoice invoice = hotel.paymentService.produceInvoice(hotel.guestName, hotel.departure, List.of(hotel.freeRoom));
+        hotel.hotelService.checkOut(hotel.guestName, hotel.freeRoom, hotel.departure);
+        return invoice;
+    }
+}
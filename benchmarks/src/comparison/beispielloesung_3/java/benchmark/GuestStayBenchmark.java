@@ -0,0 +1,87 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import persistence.*;
+import service.Either;
+import service.Error;
+import service.HotelService;
+import service.PaymentService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// beispielloesung_3 as it is now: value records, BookingRequest and Either results on top of the indexed, columnar repositories
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GuestStayBenchmark {
+
+    static final ArrivalDate FIRST_ARRIVAL = new ArrivalDate(2020, 1, 1);
+    static final int STAY_LENGTH = 3;
+
+    @State(Scope.Thread)
+    public static class Hotel {
+
+        @Param({"10", "100", "1000"})
+        public int roomCount;
+
+        @Param({"10", "100"})
+        public int bookingsPerRoom;
+
+        RoomRepository rooms;
+        PaymentRepository payments;
+        HotelService hotelService;
+        PaymentService paymentService;
+        ArrivalDate arrival;
+        DepartureDate departure;
+        GuestName guestName;
+        RoomNumber freeRoom;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            rooms = new RoomRepository();
+            for (int room = 1; room <= roomCount; room++) {
+                List<Booking> bookings = new ArrayList<>();
+                if (room < roomCount) {
+                    GuestName guestName = new GuestName("Guest " + room);
+                    for (int i = 0; i < bookingsPerRoom; i++) {
+                        ArrivalDate arrivalDate = FIRST_ARRIVAL.plusDays(i * STAY_LENGTH);
+                        bookings.add(new Booking(arrivalDate, new DepartureDate(arrivalDate.arrivalDate().plusDays(STAY_LENGTH)), guestName));
+                    }
+                }
+                RoomNumber roomNumber = new RoomNumber(Integer.toString(room));
+                rooms.save(new Room(roomNumber, bookings));
+                bookings.forEach(booking -> rooms.markBookingAsCheckedIn(roomNumber, booking));
+                rooms.markBookingsAsInvoiced(Map.of(roomNumber, bookings));
+            }
+            payments = new PaymentRepository();
+            hotelService = new HotelService(rooms);
+            paymentService = new PaymentService(payments, rooms, new InvoiceRepository());
+            arrival = FIRST_ARRIVAL.plusDays(bookingsPerRoom / 2 * STAY_LENGTH);
+            departure = new DepartureDate(arrival.arrivalDate().plusDays(STAY_LENGTH));
+            guestName = new GuestName("Walk-in");
+            freeRoom = new RoomNumber(Integer.toString(roomCount));
+        }
+
+        @TearDown(Level.Invocation)
+        public void endStay() {
+            Room room = rooms.getRooms().get(freeRoom);
+            rooms.cancelBooking(room, room.getBookings().getFirst());
+            payments.save(guestName, new ArrayList<>());
+        }
+    }
+
+    @Benchmark
+    public Either<Error, Invoice> guestStay(Hotel hotel) {
+        hotel.hotelService.bookRoom(BookingRequest.of(hotel.arrival, hotel.departure, hotel.guestName).result());
+        hotel.hotelService.checkIn(hotel.guestName, hotel.arrival);
+        hotel.paymentService.payAmount(hotel.guestName, new Amount(100.0 * STAY_LENGTH));
+        Either<Error, Invoice> invoice = hotel.paymentService.produceInvoice(hotel.guestName, hotel.departure, List.of(hotel.freeRoom));
+        hotel.hotelService.checkOut(hotel.guestName, hotel.freeRoom, hotel.departure);
+        return invoice;
+    }
+}
@@ -0,0 +1,110 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import persistence.*;
+import service.Either;
+import service.Error;
+import service.HotelService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HotelServiceBenchmark {
+
+    static final ArrivalDate FIRST_ARRIVAL = new ArrivalDate(2020, 1, 1);
+
+    // Every room but the last one is booked back to back for its whole history, so a search
+    // for a free room has to get past all of them: a nearly full hotel.
+    @State(Scope.Benchmark)
+    public static class Hotel {
+
+        @Param({"10", "100", "1000", "10000"})
+        public int roomCount;
+
+        @Param({"10", "100"})
+        public int bookingsPerRoom;
+
+        @Param({"1", "7"})
+        public int stayLength;
+
+        RoomRepository rooms;
+        HotelService hotelService;
+        ArrivalDate requestedArrival;
+        DepartureDate requestedDeparture;
+        BookingRequest bookingRequest;
+        GuestName arrivingGuest;
+        RoomNumber departingRoom;
+        DepartureDate departure;
+
+        @Setup
+        public void setUp() {
+            rooms = new RoomRepository();
+            for (int room = 1; room <= roomCount; room++) {
+                List<Booking> bookings = new ArrayList<>();
+                if (room < roomCount) {
+                    GuestName guestName = new GuestName("Guest " + room);
+                    for (int i = 0; i < bookingsPerRoom; i++) {
+                        ArrivalDate arrivalDate = FIRST_ARRIVAL.plusDays(i * stayLength);
+                        bookings.add(new Booking(arrivalDate, new DepartureDate(arrivalDate.arrivalDate().plusDays(stayLength)), guestName));
+                    }
+                }
+                rooms.save(new Room(new RoomNumber(Integer.toString(room)), bookings));
+            }
+            hotelService = new HotelService(rooms);
+
+            requestedArrival = FIRST_ARRIVAL.plusDays(bookingsPerRoom / 2 * stayLength);
+            requestedDeparture = new DepartureDate(requestedArrival.arrivalDate().plusDays(stayLength));
+            bookingRequest = BookingRequest.of(requestedArrival, requestedDeparture, new GuestName("Walk-in")).result();
+
+            arrivingGuest = new GuestName("Guest 1");
+            departingRoom = new RoomNumber("1");
+            departure = new DepartureDate(FIRST_ARRIVAL.arrivalDate().plusDays(stayLength));
+            rooms.markBookingsAsInvoiced(Map.of(departingRoom, List.of(rooms.getRooms().get(departingRoom).getBookings().getFirst())));
+        }
+    }
+
+    // bookRoom changes the hotel, so every booking made by the benchmark is cancelled again
+    @State(Scope.Thread)
+    public static class LastBooking {
+
+        RoomNumber roomNumber;
+
+        @TearDown(Level.Invocation)
+        public void cancel(Hotel hotel) {
+            if (roomNumber != null) {
+                Room room = hotel.rooms.getRooms().get(roomNumber);
+                hotel.rooms.cancelBooking(room, room.getBookings().getLast());
+                roomNumber = null;
+            }
+        }
+    }
+
+    @Benchmark
+    public Either<Error, Amount> requestRoom(Hotel hotel) {
+        return hotel.hotelService.requestRoom(hotel.requestedArrival, hotel.requestedDeparture);
+    }
+
+    @Benchmark
+    public Either<Error, RoomNumber> bookRoom(Hotel hotel, LastBooking lastBooking) {
+        Either<Error, RoomNumber> result = hotel.hotelService.bookRoom(hotel.bookingRequest);
+        lastBooking.roomNumber = result.isError() ? null : result.result();
+        return result;
+    }
+
+    @Benchmark
+    public Either<Error, List<RoomNumber>> checkIn(Hotel hotel) {
+        return hotel.hotelService.checkIn(hotel.arrivingGuest, FIRST_ARRIVAL);
+    }
+
+    @Benchmark
+    public Either<Error, Booking> checkOut(Hotel hotel) {
+        return hotel.hotelService.checkOut(hotel.arrivingGuest, hotel.departingRoom, hotel.departure);
+    }
+}
@@ -0,0 +1,131 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import persistence.*;
+import service.Either;
+import service.Error;
+import service.PaymentService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PaymentServiceBenchmark {
+
+    static final int FILLER_ROOMS = 100;
+    static final int NIGHTS_PER_STAY = 3;
+    static final ArrivalDate ARRIVAL = new ArrivalDate(2020, 1, 1);
+    static final DepartureDate DEPARTURE = new DepartureDate(2020, 1, 1 + NIGHTS_PER_STAY);
+
+    // One guest with a checked-in stay in every invoiced room, paid in equal parts so that
+    // producing the invoice has to use up every payment, next to a hotel full of other guests.
+    @State(Scope.Benchmark)
+    public static class Ledger {
+
+        @Param({"1", "10", "100"})
+        public int paymentsPerGuest;
+
+        @Param({"1", "5"})
+        public int roomsPerInvoice;
+
+        @Param({"1000", "100000"})
+        public int bookingsInHotel;
+
+        final GuestName guestName = new GuestName("Corporate Guest");
+        RoomRepository rooms;
+        PaymentRepository payments;
+        PaymentService paymentService;
+        List<RoomNumber> invoicedRooms;
+        Amount paymentPerPart;
+
+        @Setup
+        public void setUp() {
+            rooms = new RoomRepository();
+            invoicedRooms = new ArrayList<>();
+            for (int room = 1; room <= roomsPerInvoice; room++) {
+                RoomNumber roomNumber = new RoomNumber("Suite " + room);
+                rooms.save(new Room(roomNumber, new ArrayList<>()));
+                invoicedRooms.add(roomNumber);
+                addCheckedInStay(roomNumber);
+            }
+            for (int room = 1; room <= FILLER_ROOMS; room++) {
+                List<Booking> bookings = new ArrayList<>();
+                GuestName otherGuest = new GuestName("Guest " + room);
+                for (int i = 0; i < bookingsInHotel / FILLER_ROOMS; i++) {
+                    ArrivalDate arrivalDate = ARRIVAL.minusDays((i + 1) * NIGHTS_PER_STAY);
+                    bookings.add(new Booking(arrivalDate, new DepartureDate(arrivalDate.arrivalDate().plusDays(NIGHTS_PER_STAY)), otherGuest));
+                }
+                rooms.save(new Room(new RoomNumber(Integer.toString(room)), bookings));
+            }
+            paymentPerPart = new Amount(100.0 * NIGHTS_PER_STAY * roomsPerInvoice / paymentsPerGuest);
+            payments = new PaymentRepository();
+            resetPayments();
+            paymentService = new PaymentService(payments, rooms, new InvoiceRepository());
+        }
+
+        void addCheckedInStay(RoomNumber roomNumber) {
+            Booking booking = new Booking(ARRIVAL, DEPARTURE, guestName);
+            rooms.addBooking(rooms.getRooms().get(roomNumber), booking);
+            rooms.markBookingAsCheckedIn(roomNumber, booking);
+        }
+
+        void resetPayments() {
+            List<Payment> guestPayments = new ArrayList<>();
+            for (int i = 0; i < paymentsPerGuest; i++) {
+                guestPayments.add(new Payment(guestName, paymentPerPart));
+            }
+            payments.save(guestName, guestPayments);
+        }
+    }
+
+    // produceInvoice consumes the credit and invoices the bookings, before every call the payments are
+    // restored and the invoiced stays are replaced by checked-in ones
+    @State(Scope.Thread)
+    public static class UninvoicedStay {
+
+        PaymentService paymentService;
+
+        @Setup(Level.Invocation)
+        public void reset(Ledger ledger) {
+            ledger.resetPayments();
+            for (RoomNumber roomNumber : ledger.invoicedRooms) {
+                Room room = ledger.rooms.getRooms().get(roomNumber);
+                room.getBookings().forEach(booking -> ledger.rooms.cancelBooking(room, booking));
+                ledger.addCheckedInStay(roomNumber);
+            }
+            paymentService = new PaymentService(ledger.payments, ledger.rooms, new InvoiceRepository());
+        }
+    }
+
+    // payAmount appends to the guest's payments, the appended payment is removed after every call
+    @State(Scope.Thread)
+    public static class AppendedPayment {
+
+        @TearDown(Level.Invocation)
+        public void remove(Ledger ledger) {
+            List<Payment> guestPayments = ledger.payments.load(ledger.guestName);
+            guestPayments.removeLast();
+            ledger.payments.save(ledger.guestName, guestPayments);
+        }
+    }
+
+    @Benchmark
+    public void payAmount(Ledger ledger, AppendedPayment appendedPayment) {
+        ledger.paymentService.payAmount(ledger.guestName, ledger.paymentPerPart);
+    }
+
+    @Benchmark
+    public Amount remainingCredit(Ledger ledger) {
+        return ledger.paymentService.remainingCredit(ledger.guestName);
+    }
+
+    @Benchmark
+    public Either<Error, Invoice> produceInvoice(Ledger ledger, UninvoicedStay uninvoicedStay) {
+        return uninvoicedStay.paymentService.produceInvoice(ledger.guestName, DEPARTURE, ledger.invoicedRooms);
+    }
+}